@@ -1,11 +1,18 @@
 import core.Cloner;
+import core.RepositoryMaintainer;
 import core.RepositoryScanner;
+import core.RepositoryWatcher;
+import core.ScanOptions;
+import core.ScanResult;
 import picocli.CommandLine;
 
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Scanner;
 
@@ -18,7 +25,7 @@ public class Application {
         if (args.length == 0) cmd.usage(System.out);
     }
 
-    @CommandLine.Command(name = "java -jar ddgit.jar", subcommands = {Clone.class, Delete.class, Scan.class, Repack.class})
+    @CommandLine.Command(name = "java -jar ddgit.jar", subcommands = {Clone.class, Delete.class, Scan.class, Repack.class, Maintain.class, Watch.class})
     static class Deduplicate implements Runnable {
         @Override
         public void run() {
@@ -36,7 +43,7 @@ public class Application {
         @CommandLine.Option(names = {"-d", "--deduplicate"}, description = "Enable deduplication, way of deduplication is selected automatically.")
         boolean deduplicate;
 
-        @CommandLine.Option(names = {"-a", "--authorize"}, description = "Use authorized access to GitHub to increase API rate limit (if cloning from GitHub with deduplication).")
+        @CommandLine.Option(names = {"-a", "--authorize"}, description = "Look for source repository using GitHub API with authorized access (if cloning from GitHub with deduplication). By default remote references are listed with 'git ls-remote', which works for any host.")
         boolean authorize;
 
         @CommandLine.Option(names = {"--dumb"}, description = "Enable forced dumb deduplication, use only with '-d'.")
@@ -45,6 +52,15 @@ public class Application {
         @CommandLine.Option(names = {"-k", "--wk", "--well-known"}, description = "Forcibly look for source repository in well-known repositories list (should be used for frequently cloned repositories), use only with '-d'.")
         boolean wellKnown;
 
+        @CommandLine.Option(names = {"-c", "--content"}, description = "Look for source repositories sharing files rather than history (squashed imports, vendored copies), use only with '-d'.")
+        boolean content;
+
+        @CommandLine.Option(names = {"-w", "--worktree"}, description = "If the repository is in well-known repositories list, fetch into it and create a worktree instead of cloning.")
+        boolean worktree;
+
+        @CommandLine.Option(names = {"-r", "--ref"}, description = "A branch to check out in the worktree, use only with '-w' (default: remote HEAD).")
+        String ref;
+
         @CommandLine.Option(names = {"-b", "--bare"}, description = "Make bare clone (no checkout, only .git directory is present).")
         boolean bare;
 
@@ -56,13 +72,25 @@ public class Application {
                 Cloner.setAuthorized(authorize);
                 Cloner.setBareClone(bare);
                 try {
+                    if (worktree) {
+                        if (bare) throw new IllegalArgumentException("Wrong options combination.");
+                        try {
+                            if (RepositoryScanner.getFromFile(RepositoryScanner.WK_REPOS_FILE).containsKey(link)) {
+                                Cloner.worktreeRepo(link, path, ref);
+                                System.out.println("Worktree created.");
+                                return;
+                            }
+                        } catch (FileNotFoundException ignored) {
+                        }
+                        System.err.println("No local repository found for " + link + ", cloning it.");
+                    }
                     if (deduplicate) {
                         Map<String, Path> wkRepos = new HashMap<>();
                         // Some magic check
                         if (Boolean.logicalOr(
                                 Boolean.logicalAnd(authorize, dumb),
-                                Boolean.logicalAnd(wellKnown, Boolean.logicalOr(authorize, dumb))
-                        )) throw new IllegalArgumentException("Wrong options combination.");
+                                Boolean.logicalAnd(Boolean.logicalOr(wellKnown, content), Boolean.logicalOr(authorize, dumb))
+                        ) || Boolean.logicalAnd(wellKnown, content)) throw new IllegalArgumentException("Wrong options combination.");
 
                         try {
                             wkRepos = RepositoryScanner.getFromFile(RepositoryScanner.WK_REPOS_FILE);
@@ -72,10 +100,14 @@ public class Application {
                         }
                         if (wellKnown || wkRepos.containsKey(link))
                             Cloner.DEDUPLICATE_WELL_KNOWN.cloneRepo(link, path);
-                        else if (!dumb && link.matches("https://github\\.com/(.+)\\.git"))
+                        else if (authorize && link.matches("https://github\\.com/(.+)\\.git"))
                             Cloner.DEDUPLICATE_GITHUB.cloneRepo(link, path);
-                        else
+                        else if (content)
+                            Cloner.DEDUPLICATE_CONTENT.cloneRepo(link, path);
+                        else if (dumb)
                             Cloner.DEDUPLICATE_DUMB.cloneRepo(link, path);
+                        else
+                            Cloner.DEDUPLICATE_LS_REMOTE.cloneRepo(link, path);
                     } else {
                         Cloner.GIT_DEFAULT.cloneRepo(link, path);
                     }
@@ -141,13 +173,30 @@ public class Application {
         @CommandLine.Parameters(description = "Directories to scan for repositories.")
         String[] paths;
 
+        @CommandLine.Option(names = {"-c", "--content-index"}, description = "Also index files of found repositories to use them with 'clone -d -c'.")
+        boolean contentIndex;
+
+        @CommandLine.Option(names = {"-i", "--ignore"}, description = "Glob pattern of directories to skip, may be repeated. Patterns are also read from '.ddgitignore' files in the program directory and in directories to scan.")
+        List<String> ignore = new ArrayList<>();
+
+        @CommandLine.Option(names = {"--max-depth"}, description = "Do not look for repositories deeper than this number of directories.")
+        int maxDepth = Integer.MAX_VALUE;
+
+        @CommandLine.Option(names = {"-x", "--one-file-system"}, description = "Do not cross filesystem boundaries.")
+        boolean oneFileSystem;
+
+        @CommandLine.Option(names = {"--all-directories"}, description = "Also visit dependency caches (node_modules, .m2 etc.), virtual and network filesystems.")
+        boolean allDirectories;
+
         @Override
         public void run() {
             try {
                 if (paths != null && paths.length != 0) {
                     System.out.println("This may take a long time...");
-                    final int count = RepositoryScanner.scan(paths);
-                    System.out.println(count + " new repositories found.");
+                    final ScanResult result = RepositoryScanner.scan(getOptions(), paths);
+                    System.out.println(result.getRepositoriesFound() + " new repositories found ("
+                            + result.getDirectoriesVisited() + " directories visited, "
+                            + result.getDirectoriesPruned() + " skipped).");
                 } else {
                     System.err.println("No root directory specified.");
                 }
@@ -155,5 +204,62 @@ public class Application {
                 System.err.println("Error: " + e.getMessage());
             }
         }
+
+        ScanOptions getOptions() {
+            return new ScanOptions()
+                    .ignore(ignore)
+                    .maxDepth(maxDepth)
+                    .oneFileSystem(oneFileSystem)
+                    .skipWellKnown(!allDirectories)
+                    .buildContentIndex(contentIndex);
+        }
+    }
+
+    @CommandLine.Command(name = "watch", description = "Find local repositories and keep the list up to date while repositories are created and deleted. Accepts all the options of 'scan'.")
+    static class Watch extends Scan {
+        @CommandLine.Option(names = {"--debounce"}, description = "Milliseconds without changes before they are applied (default: ${DEFAULT-VALUE}).", defaultValue = "1000")
+        long debounce;
+
+        @Override
+        public void run() {
+            try {
+                if (paths != null && paths.length != 0) {
+                    new RepositoryWatcher(getOptions(), Duration.ofMillis(debounce), System.out::println).watch(paths);
+                } else {
+                    System.err.println("No root directory specified.");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                System.err.println("Error: " + e.getMessage());
+            }
+        }
+    }
+
+    @CommandLine.Command(name = "maintain", description = "Speed up borrowing objects from source repositories (commit-graphs, multi-pack-indexes, pack consolidation). Objects are never pruned.")
+    static class Maintain implements Runnable {
+        @CommandLine.Option(names = {"--batch-size"}, description = "Consolidate packs smaller than this size, e.g. 512m (default: ${DEFAULT-VALUE}).", defaultValue = "512m")
+        String batchSize;
+
+        @CommandLine.Option(names = {"--pause"}, description = "Seconds to pause between repositories (default: ${DEFAULT-VALUE}).", defaultValue = "10")
+        long pause;
+
+        @CommandLine.Option(names = {"--every"}, description = "Repeat maintenance every given number of minutes instead of running it once.")
+        long every;
+
+        @Override
+        public void run() {
+            RepositoryMaintainer maintainer = new RepositoryMaintainer(batchSize, Duration.ofSeconds(pause));
+            try {
+                if (every > 0) {
+                    maintainer.schedule(Duration.ofMinutes(every), System.out::println).get();
+                } else {
+                    final int count = maintainer.maintainAll(System.out::println);
+                    System.out.println(count + " repositories maintained.");
+                }
+            } catch (Exception e) {
+                System.err.println("Error: " + e.getMessage());
+            }
+        }
     }
 }
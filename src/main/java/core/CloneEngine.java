@@ -0,0 +1,233 @@
+package core;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.stream.Collectors;
+
+/**
+ * Runs clones asynchronously without touching shared state, so it can be embedded into other JVM applications.
+ * Every clone is described by {@link CloneRequest} and completes with {@link CloneResult}, errors are not thrown
+ * but reported by {@link CloneResult#getStatus()}.
+ * Cancelling the returned future (or exceeding {@link CloneRequest#getTimeout()}) kills the Git process,
+ * including the ones started while looking for source repositories.
+ * <p>
+ * The executor is pluggable, e.g. pass {@code Executors.newVirtualThreadPerTaskExecutor()} on a runtime
+ * supporting virtual threads to run thousands of clones without a platform thread per clone.
+ */
+public class CloneEngine {
+
+    /**
+     * Runs timeouts of all the engines. Cancelled timeouts are removed at once, so finished clones are not kept in memory.
+     */
+    private static final ScheduledThreadPoolExecutor TIMER = new ScheduledThreadPoolExecutor(1, runnable -> {
+        Thread thread = new Thread(runnable, "ddgit-clone-timeout");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    static {
+        TIMER.setRemoveOnCancelPolicy(true);
+    }
+
+    private final Executor executor;
+
+    /**
+     * Creates an engine running every clone in its own daemon thread.
+     */
+    public CloneEngine() {
+        this(Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "ddgit-clone");
+            thread.setDaemon(true);
+            return thread;
+        }));
+    }
+
+    /**
+     * Creates an engine running clones in the executor. Every clone occupies one task for its whole duration.
+     *
+     * @param executor executor to run clones in.
+     */
+    public CloneEngine(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Schedules the clone.
+     *
+     * @param request clone to run.
+     * @return future completed with the result of the clone. The future is completed exceptionally only if
+     * the executor rejected the clone. Cancelling it kills the Git process, the partially cloned directory
+     * is removed afterwards in the background.
+     */
+    public CompletableFuture<CloneResult> submit(CloneRequest request) {
+        CompletableFuture<CloneResult> future = new CompletableFuture<>();
+        CloneTask task = new CloneTask(request, future);
+        future.whenComplete((result, e) -> {
+            task.cancelTimeout();
+            if (future.isCancelled()) task.kill();
+        });
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /**
+     * Runs a single clone and completes its future.
+     */
+    private static class CloneTask implements Runnable {
+        private final CloneRequest request;
+        private final CompletableFuture<CloneResult> future;
+        private final List<String> notices = new CopyOnWriteArrayList<>();
+        private volatile List<Path> sources = Collections.emptyList();
+        private volatile Process process;
+        private volatile ScheduledFuture<?> timeout;
+        private boolean cloning;
+        private boolean timedOut;
+        private long start;
+
+        CloneTask(CloneRequest request, CompletableFuture<CloneResult> future) {
+            this.request = request;
+            this.future = future;
+        }
+
+        @Override
+        public void run() {
+            try {
+                runClone();
+            } catch (RuntimeException e) {
+                // The future must be completed whatever happens, see submit()
+                complete(CloneResult.Status.INTERNAL_ERROR, -1, "", e);
+            } catch (Error e) {
+                complete(CloneResult.Status.INTERNAL_ERROR, -1, "", e);
+                throw e;
+            }
+        }
+
+        private void runClone() {
+            if (future.isDone()) return;
+            start = System.nanoTime();
+            if (request.getTimeout() != null) {
+                timeout = TIMER.schedule(this::timeOut, request.getTimeout().toNanos(), TimeUnit.NANOSECONDS);
+                if (future.isDone()) cancelTimeout();
+            }
+
+            try {
+                sources = request.getCloner().findSources(request.getLink(), request.isAuthorized(),
+                        request.getWorkingDirectory().toFile(), notices::add, this::track);
+            } catch (IllegalArgumentException e) {
+                complete(CloneResult.Status.INVALID_REQUEST, -1, "", e);
+                return;
+            } catch (IOException | RuntimeException e) {
+                complete(CloneResult.Status.SOURCE_LOOKUP_FAILED, -1, "", e);
+                return;
+            }
+
+            Path target = request.getDirectory() == null
+                    ? null
+                    : request.getWorkingDirectory().resolve(request.getDirectory());
+            boolean targetExisted = target != null && Files.exists(target);
+            List<String> command = Cloner.cloneCommand(request.getLink(), request.getDirectory(), request.isBare(), sources);
+            ProcessBuilder builder = new ProcessBuilder()
+                    .redirectErrorStream(true)
+                    .directory(request.getWorkingDirectory().toFile())
+                    .command(command);
+
+            StringBuilder gitOutputBuilder = new StringBuilder();
+            CloneResult.Status status;
+            int exitCode = -1;
+            Throwable cause = null;
+            try {
+                synchronized (this) {
+                    if (future.isDone()) return;
+                    process = builder.start();
+                    cloning = true;
+                }
+                try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        gitOutputBuilder.append(line).append('\n');
+                    }
+                } catch (IOException e) {
+                    // Stream is closed when the process is killed, the outcome is decided below
+                }
+                exitCode = process.waitFor();
+                synchronized (this) {
+                    status = exitCode == 0 ? CloneResult.Status.SUCCESS
+                            : timedOut ? CloneResult.Status.TIMED_OUT : CloneResult.Status.GIT_FAILED;
+                }
+            } catch (IOException e) {
+                status = CloneResult.Status.IO_ERROR;
+                cause = e;
+            } catch (InterruptedException e) {
+                kill();
+                status = CloneResult.Status.INTERRUPTED;
+                cause = e;
+                Thread.currentThread().interrupt();
+            }
+            // The partial clone is removed before the result is reported, so the caller may reuse the directory at once
+            if (target != null && !targetExisted && (status != CloneResult.Status.SUCCESS || future.isCancelled())
+                    && Files.exists(target)) {
+                try {
+                    Cloner.delete(target);
+                } catch (IOException ignored) {
+                }
+            }
+            complete(status, exitCode, gitOutputBuilder.toString(), cause);
+        }
+
+        /**
+         * Kills Git, the clone is completed as timed out by the thread running it after removing the partial clone,
+         * or here if Git is not cloning yet.
+         */
+        private void timeOut() {
+            synchronized (this) {
+                if (future.isDone()) return;
+                timedOut = true;
+                kill();
+                if (cloning) return;
+            }
+            complete(CloneResult.Status.TIMED_OUT, -1, "", null);
+        }
+
+        private void cancelTimeout() {
+            ScheduledFuture<?> scheduled = timeout;
+            if (scheduled != null) scheduled.cancel(false);
+        }
+
+        /**
+         * Remembers the process started while looking for source repositories, so {@link #kill()} stops it.
+         * Kills it at once if the clone is already cancelled or timed out.
+         */
+        private synchronized void track(Process started) {
+            process = started;
+            if (future.isDone()) kill();
+        }
+
+        /**
+         * Kills Git and all the processes it started (remote helpers, index-pack etc.).
+         * Git is killed before its children, otherwise it may start a new connection when the old one dies.
+         */
+        private synchronized void kill() {
+            if (process != null) {
+                List<ProcessHandle> descendants = process.descendants().collect(Collectors.toList());
+                process.destroyForcibly();
+                descendants.forEach(ProcessHandle::destroyForcibly);
+            }
+        }
+
+        private void complete(CloneResult.Status status, int exitCode, String gitOutput, Throwable cause) {
+            Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+            future.complete(new CloneResult(request, status, exitCode, gitOutput, sources, notices, elapsed, cause));
+        }
+    }
+}
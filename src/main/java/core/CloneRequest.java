@@ -0,0 +1,144 @@
+package core;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Objects;
+
+/**
+ * Immutable description of a single clone to be run by {@link CloneEngine}.
+ * Holds all the options which {@link Cloner} otherwise takes from its static setters.
+ */
+public final class CloneRequest {
+
+    private final String link;
+    private final String directory;
+    private final Path workingDirectory;
+    private final Cloner cloner;
+    private final boolean bare;
+    private final boolean authorized;
+    private final Duration timeout;
+
+    private CloneRequest(Builder builder) {
+        this.link = builder.link;
+        this.directory = builder.directory;
+        this.workingDirectory = builder.workingDirectory;
+        this.cloner = builder.cloner;
+        this.bare = builder.bare;
+        this.authorized = builder.authorized;
+        this.timeout = builder.timeout;
+    }
+
+    /**
+     * Starts building a request.
+     *
+     * @param link a link to repository to clone.
+     * @return new builder.
+     */
+    public static Builder builder(String link) {
+        return new Builder(link);
+    }
+
+    public String getLink() {
+        return link;
+    }
+
+    /**
+     * @return directory to place cloned repository or null to let Git choose it.
+     */
+    public String getDirectory() {
+        return directory;
+    }
+
+    public Path getWorkingDirectory() {
+        return workingDirectory;
+    }
+
+    public Cloner getCloner() {
+        return cloner;
+    }
+
+    public boolean isBare() {
+        return bare;
+    }
+
+    public boolean isAuthorized() {
+        return authorized;
+    }
+
+    /**
+     * @return maximum time the whole clone may take or null if there is no limit.
+     */
+    public Duration getTimeout() {
+        return timeout;
+    }
+
+    @Override
+    public String toString() {
+        return "CloneRequest{" + cloner + " " + link + (directory == null ? "" : " -> " + directory) + "}";
+    }
+
+    public static final class Builder {
+        private final String link;
+        private String directory;
+        private Path workingDirectory = Path.of(System.getProperty("user.dir"));
+        private Cloner cloner = Cloner.GIT_DEFAULT;
+        private boolean bare;
+        private boolean authorized;
+        private Duration timeout;
+
+        private Builder(String link) {
+            this.link = Objects.requireNonNull(link, "link");
+        }
+
+        /**
+         * @param directory a directory to place cloned repository, relative to the working directory.
+         */
+        public Builder directory(String directory) {
+            this.directory = directory;
+            return this;
+        }
+
+        /**
+         * @param workingDirectory directory to run Git in, current directory by default.
+         */
+        public Builder workingDirectory(Path workingDirectory) {
+            this.workingDirectory = Objects.requireNonNull(workingDirectory, "workingDirectory");
+            return this;
+        }
+
+        /**
+         * @param cloner way of deduplication, {@link Cloner#GIT_DEFAULT} by default.
+         */
+        public Builder cloner(Cloner cloner) {
+            this.cloner = Objects.requireNonNull(cloner, "cloner");
+            return this;
+        }
+
+        public Builder bare(boolean bare) {
+            this.bare = bare;
+            return this;
+        }
+
+        /**
+         * @param authorized whether to use authorized access to GitHub API, see {@link Cloner#DEDUPLICATE_GITHUB}.
+         */
+        public Builder authorized(boolean authorized) {
+            this.authorized = authorized;
+            return this;
+        }
+
+        /**
+         * @param timeout maximum time the whole clone may take, null for no limit.
+         */
+        public Builder timeout(Duration timeout) {
+            if (timeout != null && (timeout.isNegative() || timeout.isZero()))
+                throw new IllegalArgumentException("Timeout must be positive: " + timeout);
+            this.timeout = timeout;
+            return this;
+        }
+
+        public CloneRequest build() {
+            return new CloneRequest(this);
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package core;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Outcome of a clone run by {@link CloneEngine}.
+ * Failures are reported through {@link #getStatus()} instead of exceptions, so callers can handle them uniformly.
+ */
+public final class CloneResult {
+
+    public enum Status {
+        /**
+         * Repository cloned.
+         */
+        SUCCESS,
+        /**
+         * Request cannot be run as is, e.g. wrong link for {@link Cloner#DEDUPLICATE_GITHUB}.
+         */
+        INVALID_REQUEST,
+        /**
+         * Source repositories cannot be looked up (repository lists, tokens or remote API problems).
+         */
+        SOURCE_LOOKUP_FAILED,
+        /**
+         * Git process cannot be started or its output cannot be read.
+         */
+        IO_ERROR,
+        /**
+         * Git finished execution with non-zero exit code.
+         */
+        GIT_FAILED,
+        /**
+         * Clone took longer than {@link CloneRequest#getTimeout()}, Git process was killed.
+         */
+        TIMED_OUT,
+        /**
+         * Thread running the clone was interrupted, Git process was killed.
+         */
+        INTERRUPTED,
+        /**
+         * Unexpected exception while running the clone, see {@link #getCause()}.
+         */
+        INTERNAL_ERROR
+    }
+
+    private final CloneRequest request;
+    private final Status status;
+    private final int exitCode;
+    private final String gitOutput;
+    private final List<Path> sources;
+    private final List<String> notices;
+    private final Duration elapsed;
+    private final Throwable cause;
+
+    CloneResult(CloneRequest request, Status status, int exitCode, String gitOutput,
+                List<Path> sources, List<String> notices, Duration elapsed, Throwable cause) {
+        this.request = request;
+        this.status = status;
+        this.exitCode = exitCode;
+        this.gitOutput = gitOutput;
+        this.sources = List.copyOf(sources);
+        this.notices = List.copyOf(notices);
+        this.elapsed = elapsed;
+        this.cause = cause;
+    }
+
+    public CloneRequest getRequest() {
+        return request;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public boolean isSuccessful() {
+        return status == Status.SUCCESS;
+    }
+
+    /**
+     * @return Git exit code or -1 if Git did not finish by itself.
+     */
+    public int getExitCode() {
+        return exitCode;
+    }
+
+    /**
+     * @return everything Git printed (stdout and stderr), empty if Git was not started.
+     */
+    public String getGitOutput() {
+        return gitOutput;
+    }
+
+    /**
+     * @return source repositories specified in "--reference".
+     */
+    public List<Path> getSources() {
+        return sources;
+    }
+
+    /**
+     * @return messages about the source repository search.
+     */
+    public List<String> getNotices() {
+        return notices;
+    }
+
+    public Duration getElapsed() {
+        return elapsed;
+    }
+
+    /**
+     * @return exception which caused the failure or null.
+     */
+    public Throwable getCause() {
+        return cause;
+    }
+
+    /**
+     * @return human-readable description of the failure or null if the clone succeeded.
+     */
+    public String getErrorMessage() {
+        switch (status) {
+            case SUCCESS:
+                return null;
+            case GIT_FAILED:
+                return "Something went wrong when running Git, the exit code is " + exitCode + "\nGit said:\n" + gitOutput;
+            case TIMED_OUT:
+                return "Clone timed out after " + request.getTimeout();
+            default:
+                return cause == null || cause.getMessage() == null ? status.toString() : cause.getMessage();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "CloneResult{" + status + ", " + request + ", " + elapsed.toMillis() + " ms}";
+    }
+}
@@ -4,9 +4,14 @@ import org.eclipse.egit.github.core.RepositoryId;
 import org.eclipse.egit.github.core.service.CommitService;
 
 import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -16,23 +21,18 @@ import static core.RepositoryScanner.WK_REPOS_FILE;
 public enum Cloner {
     GIT_DEFAULT {
         /**
-         * Clones repository using "git clone <i>link</i> <i>directory</i>".
+         * Clones repository using "git clone <i>link</i> <i>directory</i>", no source repositories are used.
          *
-         * @param link      a link to repository to clone.
-         * @param directory a directory to place cloned repository.
-         * @throws IOException           see {@link #runGit(List)}.
-         * @throws InterruptedException  see {@link #runGit(List)}.
-         * @throws IllegalStateException see {@link #runGit(List)}.
+         * @param link             a link to repository to clone.
+         * @param authorized       ignored.
+         * @param workingDirectory ignored.
+         * @param notices          ignored.
+         * @param processes        ignored.
+         * @return empty list.
          */
         @Override
-        public void cloneRepo(String link, String directory) throws IOException, InterruptedException, IllegalStateException {
-            List<String> command = new ArrayList<>(Arrays.asList("git", "clone", link));
-            if (directory != null)
-                command.add(directory);
-            if (isBareClone)
-                command.add("--bare");
-            currentWorkingDirectory = System.getProperty("user.dir");
-            Cloner.runGit(command);
+        List<Path> findSources(String link, boolean authorized, File workingDirectory, Consumer<String> notices, Consumer<Process> processes) {
+            return Collections.emptyList();
         }
     },
     DEDUPLICATE_DUMB {
@@ -41,27 +41,22 @@ public enum Cloner {
          * Uses 'dumb' deduplication (every source repository is specified in "--reference").
          * If no source repositories specified, clones repository like {@link Cloner#GIT_DEFAULT}.
          *
-         * @param link a link to repository to clone.
-         * @param directory a directory to place cloned repository.
-         * @throws IOException if there are some problems with {@link RepositoryScanner#REPOS_FILE}, also see {@link #runGit(List)}.
-         * @throws InterruptedException see {@link #runGit(List)}.
-         * @throws IllegalStateException see {@link #runGit(List)}.
+         * @param link             a link to repository to clone.
+         * @param authorized       ignored.
+         * @param workingDirectory ignored.
+         * @param notices          ignored.
+         * @param processes        ignored.
+         * @return all the source repositories from {@link RepositoryScanner#REPOS_FILE}.
+         * @throws IOException if there are some problems with {@link RepositoryScanner#REPOS_FILE}.
          */
         @Override
-        public void cloneRepo(String link, String directory) throws IOException, InterruptedException, IllegalStateException {
-            List<String> command = new ArrayList<>(Arrays.asList("git", "clone", link));
-            if (directory != null)
-                command.add(directory);
-            if (isBareClone)
-                command.add("--bare");
+        List<Path> findSources(String link, boolean authorized, File workingDirectory, Consumer<String> notices, Consumer<Process> processes) throws IOException {
             Map<String, Path> sourceRepositories = RepositoryScanner.getFromFile(REPOS_FILE);
+            List<Path> sources = new ArrayList<>();
             for (Path repo : sourceRepositories.values()) {
-                String repoPath = repo.toAbsolutePath().getParent().toString();
-                command.add("--reference");
-                command.add(repoPath);
+                sources.add(repo.toAbsolutePath().getParent());
             }
-            currentWorkingDirectory = System.getProperty("user.dir");
-            Cloner.runGit(command);
+            return sources;
         }
     },
     DEDUPLICATE_GITHUB {
@@ -70,28 +65,25 @@ public enum Cloner {
          * Uses 'smart' deduplication (choosing the right repository to specify in "--reference").
          * If no source repository found, clones repository like {@link Cloner#GIT_DEFAULT}.
          *
-         * @param link a link to repository to clone.
-         * @param directory a directory to place cloned repository.
-         * @throws IOException if there are some problems with {@link RepositoryScanner#REPOS_FILE} or with {@link TokenHolder#TOKEN_FILE}, also see {@link #runGit(List)}.
-         * @throws InterruptedException see {@link #runGit(List)}.
-         * @throws IllegalStateException if there are some problems with authorization, also see {@link #runGit(List)}.
+         * @param link             a link to repository to clone.
+         * @param authorized       whether to use authorized access to GitHub API.
+         * @param workingDirectory ignored.
+         * @param notices          receives messages about the source repository search.
+         * @param processes        ignored.
+         * @return the source repository suitable for the link or empty list.
+         * @throws IOException           if there are some problems with {@link RepositoryScanner#REPOS_FILE} or with {@link TokenHolder#TOKEN_FILE}.
+         * @throws IllegalStateException if there are some problems with authorization.
          */
         @Override
-        public void cloneRepo(String link, String directory) throws IOException, IllegalStateException, InterruptedException {
-            Pattern gitHubPattern = Pattern.compile("https://github\\.com/(.+)\\.git");
+        List<Path> findSources(String link, boolean authorized, File workingDirectory, Consumer<String> notices, Consumer<Process> processes) throws IOException, IllegalStateException {
+            Pattern gitHubPattern = Pattern.compile("https://github\\.com/([^/]+)/([^/]+)\\.git");
             Matcher gitHubMatcher = gitHubPattern.matcher(link);
             RepositoryId repositoryId;
             if (gitHubMatcher.find()) {
-                String[] repositoryName = gitHubMatcher.group(1).split("/");
-                repositoryId = new RepositoryId(repositoryName[0], repositoryName[1]);
+                repositoryId = new RepositoryId(gitHubMatcher.group(1), gitHubMatcher.group(2));
             } else {
                 throw new IllegalArgumentException("Wrong GitHub link: " + link);
             }
-            List<String> command = new ArrayList<>(Arrays.asList("git", "clone", link));
-            if (directory != null)
-                command.add(directory);
-            if (isBareClone)
-                command.add("--bare");
 
             Map<String, Path> sourceRepositories = RepositoryScanner.getFromFile(REPOS_FILE);
             Set<String> sourceHashes = sourceRepositories.keySet();
@@ -99,7 +91,7 @@ public enum Cloner {
 
             String token = "";
             CommitService service = new CommitService();
-            if (isAuthorized)
+            if (authorized)
                 service.getClient().setOAuth2Token(token = TokenHolder.getToken());
 
             String currentSourceHash;
@@ -116,12 +108,12 @@ public enum Cloner {
                     } catch (IOException e) {
                         String message = e.getMessage();
                         if (message.startsWith("API rate limit")) {
-                            if (!isAuthorized)
+                            if (!authorized)
                                 throw new IllegalStateException("API rate limit exceed. Try later or use authorized access.");
                         } else if (message.startsWith("No commit found")) {
                             continue outerLoop;
                         } else if (message.startsWith("Bad credentials")) {
-                            System.err.println(token + " is wrong token.");
+                            notices.accept(token + " is wrong token.");
                             service.getClient().setOAuth2Token(token = TokenHolder.getToken());
                             if (currentToken.equals(token))
                                 throw new IllegalStateException("No token can be used. Check if they are valid or try later if their API rate limit exceeded.");
@@ -137,18 +129,112 @@ public enum Cloner {
             if (sourceRepositories.containsKey(remoteHash)) {
                 File sourceRepository = sourceRepositories.get(remoteHash).toFile();
                 if (sourceRepository.exists() && sourceRepository.canRead() && sourceRepository.isDirectory()) {
-                    System.out.println("Local source repository for " + link + " found: " + sourceRepository.getAbsolutePath());
-                    command.add("--reference");
-                    command.add(sourceRepository.getParentFile().getAbsolutePath());
+                    notices.accept("Local source repository for " + link + " found: " + sourceRepository.getAbsolutePath());
+                    return List.of(sourceRepository.getParentFile().getAbsoluteFile().toPath());
                 } else {
-                    System.err.println("Remove invalid repository " + sourceRepository.getAbsolutePath() + " from " + REPOS_FILE);
+                    notices.accept("Remove invalid repository " + sourceRepository.getAbsolutePath() + " from " + REPOS_FILE);
                 }
             } else {
-                System.err.println("No local source repository found for " + link);
+                notices.accept("No local source repository found for " + link);
+            }
+            return Collections.emptyList();
+        }
+    },
+    DEDUPLICATE_LS_REMOTE {
+        /**
+         * Clones repository from any host using "git clone <i>link</i> <i>directory</i> --reference <i>sourceRepository</i>".
+         * Gets the tips of all the remote references with a single "git ls-remote" and chooses the source repository
+         * containing the most of them according to {@link CommitIndex}. Needs no API tokens.
+         * If no source repository found, clones repository like {@link Cloner#GIT_DEFAULT}.
+         *
+         * @param link             a link to repository to clone.
+         * @param authorized       ignored.
+         * @param workingDirectory directory to run "git ls-remote" in, relative links are resolved against it.
+         * @param notices          receives messages about the source repository search.
+         * @param processes        receives the "git ls-remote" process, so it can be killed to stop the search.
+         * @return the source repository sharing the most references with the remote or empty list.
+         * @throws IOException           if there are some problems with {@link RepositoryScanner#REPOS_FILE} or with {@link CommitIndex#INDEX_FILE}.
+         * @throws IllegalStateException if remote references cannot be listed.
+         */
+        @Override
+        List<Path> findSources(String link, boolean authorized, File workingDirectory, Consumer<String> notices, Consumer<Process> processes) throws IOException, IllegalStateException {
+            Set<String> remoteHashes = new HashSet<>();
+            try {
+                String references = runGit(Arrays.asList("git", "ls-remote", link), workingDirectory, processes);
+                Matcher matcher = Pattern.compile("^([0-9a-f]{40})\\t", Pattern.MULTILINE).matcher(references);
+                while (matcher.find()) {
+                    remoteHashes.add(matcher.group(1));
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while listing remote references.");
             }
 
-            currentWorkingDirectory = System.getProperty("user.dir");
-            Cloner.runGit(command);
+            Map<String, Path> sourceRepositories = RepositoryScanner.getFromFile(REPOS_FILE);
+            Path sourceRepository = CommitIndex.forRepositories(sourceRepositories.values()).bestMatch(remoteHashes);
+            if (sourceRepository != null) {
+                notices.accept("Local source repository for " + link + " found: " + sourceRepository);
+                return List.of(sourceRepository.getParent());
+            }
+            notices.accept("No local source repository found for " + link);
+            return Collections.emptyList();
+        }
+    },
+    DEDUPLICATE_CONTENT {
+        /**
+         * Clones repository using "git clone <i>link</i> <i>directory</i> --reference <i>sourceRepository</i>".
+         * Fetches only the trees of the remote default branch tip (no blobs, no history) and chooses the source
+         * repositories containing at least {@link #MIN_CONTENT_OVERLAP} of its trees and blobs according to {@link ObjectIndex}.
+         * Finds sources sharing content but no commits (squashed imports, vendored copies, re-initialised histories).
+         * If no source repository found, clones repository like {@link Cloner#GIT_DEFAULT}.
+         *
+         * @param link             a link to repository to clone.
+         * @param authorized       ignored.
+         * @param workingDirectory ignored.
+         * @param notices          receives messages about the source repository search.
+         * @param processes        receives every Git process started, so it can be killed to stop the search.
+         * @return source repositories sharing the most content with the remote or empty list.
+         * @throws IOException           if there are some problems with {@link RepositoryScanner#REPOS_FILE} or with {@link ObjectIndex#INDEX_FILE}.
+         * @throws IllegalStateException if the remote trees cannot be fetched.
+         */
+        @Override
+        List<Path> findSources(String link, boolean authorized, File workingDirectory, Consumer<String> notices, Consumer<Process> processes) throws IOException, IllegalStateException {
+            Set<String> remoteHashes = new HashSet<>();
+            Path metadataRepository = Files.createTempDirectory("ddgit");
+            File metadataDirectory = metadataRepository.toFile();
+            try {
+                runGit(Arrays.asList("git", "init", "--bare", "--quiet"), metadataDirectory, processes);
+                runGit(Arrays.asList("git", "fetch", "--quiet", "--depth=1", "--filter=blob:none", link, "HEAD"), metadataDirectory, processes);
+                String tree = runGit(Arrays.asList("git", "ls-tree", "-r", "-t", "FETCH_HEAD"), metadataDirectory, processes);
+                Matcher matcher = Pattern.compile("^\\d+ (?:blob|tree) ([0-9a-f]{40})\\t", Pattern.MULTILINE).matcher(tree);
+                while (matcher.find()) {
+                    remoteHashes.add(matcher.group(1));
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while fetching remote trees.");
+            } finally {
+                delete(metadataRepository);
+            }
+            if (remoteHashes.isEmpty()) {
+                notices.accept("Remote repository " + link + " is empty");
+                return Collections.emptyList();
+            }
+
+            Map<String, Path> sourceRepositories = RepositoryScanner.getFromFile(REPOS_FILE);
+            Map<Path, Integer> matches = ObjectIndex.forRepositories(sourceRepositories.values()).matches(remoteHashes);
+            List<Path> sources = new ArrayList<>();
+            matches.entrySet().stream()
+                    .filter(entry -> entry.getValue() >= MIN_CONTENT_OVERLAP * remoteHashes.size())
+                    .sorted(Map.Entry.<Path, Integer>comparingByValue().reversed())
+                    .forEach(entry -> {
+                        notices.accept("Local source repository for " + link + " found: " + entry.getKey()
+                                + " (" + 100 * entry.getValue() / remoteHashes.size() + "% of objects)");
+                        sources.add(entry.getKey().getParent());
+                    });
+            if (sources.isEmpty())
+                notices.accept("No local source repository found for " + link);
+            return sources;
         }
     },
     DEDUPLICATE_WELL_KNOWN {
@@ -158,36 +244,39 @@ public enum Cloner {
          * If no source repository found, clones repository like {@link Cloner#GIT_DEFAULT}.
          * Should be used for frequently cloned repositories.
          *
-         * @param link a link to repository to clone.
-         * @param directory a directory to place cloned repository.
-         * @throws IOException if there are some problems with {@link RepositoryScanner#WK_REPOS_FILE}, also see {@link #runGit(List)}.
-         * @throws InterruptedException see {@link #runGit(List)}.
-         * @throws IllegalStateException see {@link #runGit(List)}.
+         * @param link             a link to repository to clone.
+         * @param authorized       ignored.
+         * @param workingDirectory ignored.
+         * @param notices          receives messages about the source repository search.
+         * @param processes        ignored.
+         * @return the source repository registered for the link or empty list.
+         * @throws IOException if there are some problems with {@link RepositoryScanner#WK_REPOS_FILE}.
          */
         @Override
-        public void cloneRepo(String link, String directory) throws IOException, InterruptedException, IllegalStateException {
-            List<String> command = new ArrayList<>(Arrays.asList("git", "clone", link));
-            if (directory != null)
-                command.add(directory);
-            if (isBareClone)
-                command.add("--bare");
+        List<Path> findSources(String link, boolean authorized, File workingDirectory, Consumer<String> notices, Consumer<Process> processes) throws IOException {
             Map<String, Path> wellKnownRepositories = RepositoryScanner.getFromFile(WK_REPOS_FILE);
             if (wellKnownRepositories.containsKey(link)) {
                 File sourceRepository = wellKnownRepositories.get(link).toFile();
-                System.out.println("Local source repository for " + link + " found: " + sourceRepository.getAbsolutePath());
-                command.add("--reference");
-                command.add(sourceRepository.getParentFile().getAbsolutePath());
-            } else {
-                System.err.println("No local source repository found for " + link);
+                notices.accept("Local source repository for " + link + " found: " + sourceRepository.getAbsolutePath());
+                return List.of(sourceRepository.getParentFile().getAbsoluteFile().toPath());
             }
-            currentWorkingDirectory = System.getProperty("user.dir");
-            Cloner.runGit(command);
+            notices.accept("No local source repository found for " + link);
+            return Collections.emptyList();
         }
     };
 
+    /**
+     * Minimal share of remote trees and blobs a source repository must contain to be used by {@link #DEDUPLICATE_CONTENT}.
+     */
+    private static final double MIN_CONTENT_OVERLAP = 0.5;
+
+    /**
+     * Locks serializing {@link #worktreeRepo(String, String, String)} for every repository within this JVM.
+     */
+    private static final Map<Path, Object> WORKTREE_LOCKS = new ConcurrentHashMap<>();
+
     private static boolean isAuthorized;
     private static boolean isBareClone;
-    private static String currentWorkingDirectory;
 
     /**
      * Set authorized access for DEDUPLICATE_GITHUB.
@@ -210,17 +299,34 @@ public enum Cloner {
     /**
      * Executes Git commands.
      *
-     * @param command list of commands to execute.
+     * @param command          list of commands to execute.
+     * @param workingDirectory directory to run Git in.
      * @throws IOException           if there are some problems when running the process or can't read program's output.
      * @throws InterruptedException  if there are some problems during the execution.
      * @throws IllegalStateException if Git finished execution with some error.
      */
-    private static String runGit(List<String> command) throws IOException, InterruptedException, IllegalStateException {
+    static String runGit(List<String> command, File workingDirectory) throws IOException, InterruptedException, IllegalStateException {
+        return runGit(command, workingDirectory, process -> {
+        });
+    }
+
+    /**
+     * Executes Git commands like {@link #runGit(List, File)}, telling about the process as soon as it is started.
+     *
+     * @param command          list of commands to execute.
+     * @param workingDirectory directory to run Git in.
+     * @param processes        receives the process before its output is read, e.g. to kill it from another thread.
+     * @throws IOException           see {@link #runGit(List, File)}.
+     * @throws InterruptedException  see {@link #runGit(List, File)}.
+     * @throws IllegalStateException see {@link #runGit(List, File)}.
+     */
+    static String runGit(List<String> command, File workingDirectory, Consumer<Process> processes) throws IOException, InterruptedException, IllegalStateException {
         ProcessBuilder builder = new ProcessBuilder()
                 .redirectErrorStream(true)
-                .directory(new File(currentWorkingDirectory))
+                .directory(workingDirectory)
                 .command(command);
         Process process = builder.start();
+        processes.accept(process);
         BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
         StringBuilder gitOutputBuilder = new StringBuilder();
         String line;
@@ -240,22 +346,89 @@ public enum Cloner {
      * Deletes a Git repository.
      *
      * @param directory directory to delete (must be a Git repository).
-     * @throws IllegalStateException when not valid directory specified, also see {@link #runGit(List)}.
-     * @throws IOException           if there are some problems with access to directory, also see {@link #runGit(List)}.
-     * @throws InterruptedException  see {@link #runGit(List)}.
+     * @throws IllegalStateException when not valid directory specified, also see {@link #runGit(List, File)}.
+     * @throws IOException           if there are some problems with access to directory, also see {@link #runGit(List, File)}.
+     * @throws InterruptedException  see {@link #runGit(List, File)}.
      */
     public static void deleteRepo(String directory) throws IllegalStateException, IOException, InterruptedException {
-        RepositoryAction deleteAction = dir -> delete(Path.of(dir));
+        RepositoryAction deleteAction = dir -> {
+            Path commonDirectory = getCommonGitDirectory(dir);
+            if (commonDirectory != null) {
+                // Linked worktree: let its repository forget it, the objects stay in the repository
+                runGit(Arrays.asList("git", "worktree", "remove", "--force", Path.of(dir).toAbsolutePath().toString()), commonDirectory.toFile());
+                runGit(Arrays.asList("git", "worktree", "prune"), commonDirectory.toFile());
+            } else {
+                delete(Path.of(dir));
+            }
+        };
         workWithRepo(deleteAction, directory, isBareRepository(directory));
     }
 
+    /**
+     * Creates a worktree of the local repository registered for the link in {@link RepositoryScanner#WK_REPOS_FILE}
+     * instead of cloning, so all the worktrees of the link share one object database.
+     * The reference is fetched into the repository first (as "refs/ddgit/<i>reference</i>"); fetches are serialized,
+     * so parallel jobs transfer the objects only once. The worktree is detached, so many of them may use the same branch.
+     * Use {@link #deleteRepo(String)} to remove the worktree.
+     *
+     * @param link      a link to repository to clone.
+     * @param directory a directory to place the worktree, if null the name is taken from the link like "git clone" does.
+     * @param reference a branch (or other reference) to check out, if null the remote HEAD is used.
+     * @throws IOException           if there are some problems with {@link RepositoryScanner#WK_REPOS_FILE}, also see {@link #runGit(List, File)}.
+     * @throws InterruptedException  see {@link #runGit(List, File)}.
+     * @throws IllegalStateException if no local repository registered for the link, also see {@link #runGit(List, File)}.
+     */
+    public static void worktreeRepo(String link, String directory, String reference) throws IOException, InterruptedException, IllegalStateException {
+        Map<String, Path> wellKnownRepositories = RepositoryScanner.getFromFile(WK_REPOS_FILE);
+        if (!wellKnownRepositories.containsKey(link))
+            throw new IllegalStateException("No local repository found for " + link + " in \"" + WK_REPOS_FILE.getName() + "\"");
+        File sourceRepository = wellKnownRepositories.get(link).toFile();
+
+        if (directory == null)
+            directory = link.replaceAll("/+$", "").replaceAll("^.*[/:]", "").replaceAll("\\.git$", "");
+        Path worktree = Path.of(System.getProperty("user.dir")).resolve(directory).toAbsolutePath();
+
+        String remoteReference = reference == null ? "HEAD" : reference;
+        String localReference = "refs/ddgit/" + (reference == null ? "HEAD" : reference.replaceFirst("^refs/", ""));
+        File lockFile = new File(sourceRepository, "ddgit-worktree.lock");
+        // File locks are held by the whole JVM, so threads of one JVM are serialized by a lock of their own
+        Object repositoryLock = WORKTREE_LOCKS.computeIfAbsent(lockFile.toPath().toAbsolutePath().normalize(), path -> new Object());
+        synchronized (repositoryLock) {
+            try (FileChannel channel = FileChannel.open(lockFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+                FileLock lock = channel.lock();
+                try {
+                    runGit(Arrays.asList("git", "fetch", "--quiet", link, "+" + remoteReference + ":" + localReference), sourceRepository);
+                    runGit(Arrays.asList("git", "worktree", "add", "--detach", worktree.toString(), localReference), sourceRepository);
+                } finally {
+                    lock.release();
+                }
+            }
+        }
+    }
+
+    /**
+     * Tells where the repository of a linked worktree is.
+     *
+     * @param directory directory to check (must be a Git repository).
+     * @return common Git directory if the directory is a linked worktree (created by "git worktree add"), null otherwise.
+     * @throws IOException           see {@link #runGit(List, File)}.
+     * @throws InterruptedException  see {@link #runGit(List, File)}.
+     * @throws IllegalStateException see {@link #runGit(List, File)}.
+     */
+    private static Path getCommonGitDirectory(String directory) throws IOException, InterruptedException, IllegalStateException {
+        Path workingDirectory = Path.of(directory).toAbsolutePath();
+        Path gitDirectory = workingDirectory.resolve(runGit(Arrays.asList("git", "rev-parse", "--git-dir"), workingDirectory.toFile()).strip());
+        Path commonDirectory = workingDirectory.resolve(runGit(Arrays.asList("git", "rev-parse", "--git-common-dir"), workingDirectory.toFile()).strip());
+        return Files.isSameFile(gitDirectory, commonDirectory) ? null : commonDirectory.normalize();
+    }
+
     /**
      * Makes repository independent from its source repository.
      *
      * @param directory directory to repack (must be a Git repository).
-     * @throws IOException           if there are some problems with access to directory, also see {@link #runGit(List)}.
-     * @throws InterruptedException  see {@link #runGit(List)}.
-     * @throws IllegalStateException if directory is not a Git repository, also see {@link #runGit(List)}.
+     * @throws IOException           if there are some problems with access to directory, also see {@link #runGit(List, File)}.
+     * @throws InterruptedException  see {@link #runGit(List, File)}.
+     * @throws IllegalStateException if directory is not a Git repository, also see {@link #runGit(List, File)}.
      */
     public static void repackRepo(String directory) throws IOException, InterruptedException, IllegalStateException {
         final boolean repoIsBare = isBareRepository(directory);
@@ -266,7 +439,7 @@ public enum Cloner {
             if (!alternatesFile.exists()) {
                 throw new FileNotFoundException("alternates file not found, looks like repository is already independent.");
             }
-            runGit(Arrays.asList("git", "repack", "-ad"));
+            runGit(Arrays.asList("git", "repack", "-ad"), new File(dir));
             alternatesFile.delete();
         };
         workWithRepo(repackAction, directory, repoIsBare);
@@ -277,14 +450,13 @@ public enum Cloner {
      * Tells if the repository bare.
      *
      * @param directory directory to check (must be a Git repository).
-     * @throws IOException           if there are some problems with access to directory, also see {@link #runGit(List)}.
-     * @throws InterruptedException  see {@link #runGit(List)}.
-     * @throws IllegalStateException if directory is not a Git repository, also see {@link #runGit(List)}.
+     * @throws IOException           if there are some problems with access to directory, also see {@link #runGit(List, File)}.
+     * @throws InterruptedException  see {@link #runGit(List, File)}.
+     * @throws IllegalStateException if directory is not a Git repository, also see {@link #runGit(List, File)}.
      */
     private static boolean isBareRepository(String directory) throws IOException, InterruptedException, IllegalStateException {
-        currentWorkingDirectory = directory;
         try {
-            return Boolean.parseBoolean(runGit(Arrays.asList("git", "rev-parse", "--is-bare-repository")).strip());
+            return Boolean.parseBoolean(runGit(Arrays.asList("git", "rev-parse", "--is-bare-repository"), new File(directory)).strip());
         } catch (IllegalStateException e) {
             throw new IllegalStateException("Directory is not a Git repository.");
         } catch (IOException e) {
@@ -298,16 +470,15 @@ public enum Cloner {
      * @param action    action to perform on repository.
      * @param directory directory to act (must be a Git repository)
      * @param isBare    if the repository bare.
-     * @throws IOException           if there are some problems with access to directory, also see {@link #runGit(List)}.
-     * @throws InterruptedException  see {@link #runGit(List)}.
-     * @throws IllegalStateException if directory is not a Git repository, also see {@link #runGit(List)}.
+     * @throws IOException           if there are some problems with access to directory, also see {@link #runGit(List, File)}.
+     * @throws InterruptedException  see {@link #runGit(List, File)}.
+     * @throws IllegalStateException if directory is not a Git repository, also see {@link #runGit(List, File)}.
      */
     private static void workWithRepo(RepositoryAction action, String directory, boolean isBare) throws IOException, InterruptedException, IllegalStateException {
-        currentWorkingDirectory = directory;
         try {
             Path gitRootDirectory = isBare
-                    ? Path.of(runGit(Arrays.asList("git", "rev-parse", "--absolute-git-dir")).strip())
-                    : Path.of(runGit(Arrays.asList("git", "rev-parse", "--show-toplevel")).strip());
+                    ? Path.of(runGit(Arrays.asList("git", "rev-parse", "--absolute-git-dir"), new File(directory)).strip())
+                    : Path.of(runGit(Arrays.asList("git", "rev-parse", "--show-toplevel"), new File(directory)).strip());
             // second runGit() may throw IllegalStateException here (if running this from .git or its subdirectories)
 
             Path workingDirectory = Path.of(directory);
@@ -333,12 +504,64 @@ public enum Cloner {
      * @param directory directory to delete.
      * @throws IOException when an I/O error occurs.
      */
-    private static void delete(Path directory) throws IOException {
+    static void delete(Path directory) throws IOException {
         Files.walk(directory)
                 .sorted(Comparator.reverseOrder())
                 .map(Path::toFile)
                 .forEach(File::delete);
     }
 
-    public abstract void cloneRepo(String link, String directory) throws IOException, InterruptedException, IllegalStateException;
+    /**
+     * Builds "git clone" command line.
+     *
+     * @param link      a link to repository to clone.
+     * @param directory a directory to place cloned repository, may be null.
+     * @param bare      whether to make bare clone.
+     * @param sources   source repositories to specify in "--reference".
+     * @return command to pass to Git.
+     */
+    static List<String> cloneCommand(String link, String directory, boolean bare, List<Path> sources) {
+        List<String> command = new ArrayList<>(Arrays.asList("git", "clone", link));
+        if (directory != null)
+            command.add(directory);
+        if (bare)
+            command.add("--bare");
+        for (Path source : sources) {
+            command.add("--reference");
+            command.add(source.toString());
+        }
+        return command;
+    }
+
+    /**
+     * Clones repository into the directory, using source repositories found by this Cloner.
+     * Uses options set by {@link #setAuthorized(boolean)} and {@link #setBareClone(boolean)},
+     * see {@link CloneEngine} to clone without shared state.
+     *
+     * @param link      a link to repository to clone.
+     * @param directory a directory to place cloned repository.
+     * @throws IOException           see {@link #findSources(String, boolean, File, Consumer, Consumer)}, also see {@link #runGit(List, File)}.
+     * @throws InterruptedException  see {@link #runGit(List, File)}.
+     * @throws IllegalStateException see {@link #findSources(String, boolean, File, Consumer, Consumer)}, also see {@link #runGit(List, File)}.
+     */
+    public void cloneRepo(String link, String directory) throws IOException, InterruptedException, IllegalStateException {
+        File workingDirectory = new File(System.getProperty("user.dir"));
+        List<Path> sources = findSources(link, isAuthorized, workingDirectory, System.out::println, process -> {
+        });
+        runGit(cloneCommand(link, directory, isBareClone, sources), workingDirectory);
+    }
+
+    /**
+     * Finds local source repositories to specify in "--reference" when cloning the link.
+     *
+     * @param link             a link to repository to clone.
+     * @param authorized       whether to use authorized access (if the Cloner uses any remote API).
+     * @param workingDirectory directory the clone is run in, Git commands of the search are run there too.
+     * @param notices          receives human-readable messages about the search.
+     * @param processes        receives every process started by the search (e.g. "git fetch"), so it can be killed to stop the search.
+     * @return working directories (or git directories for bare repositories) of source repositories.
+     * @throws IOException           if there are some problems with repository lists.
+     * @throws IllegalStateException if source repositories cannot be looked up.
+     */
+    abstract List<Path> findSources(String link, boolean authorized, File workingDirectory, Consumer<String> notices, Consumer<Process> processes) throws IOException, IllegalStateException;
 }
\ No newline at end of file
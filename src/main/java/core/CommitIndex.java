@@ -0,0 +1,74 @@
+package core;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Compact index of commits present in source repositories, see {@link RepositoryIndex}.
+ */
+public class CommitIndex extends RepositoryIndex {
+
+    /**
+     * The file where the index is stored. Binary, updated by "scan" and on demand when cloning.
+     */
+    public static final File INDEX_FILE = new File("source_commits_index");
+
+    /**
+     * Loads the index from {@link #INDEX_FILE}, indexes the repositories which are not in the file yet
+     * or whose references have changed, drops the repositories not given and saves the index back if anything has changed.
+     *
+     * @param repositories repositories (.git directories) to have in the index.
+     * @return index containing those of the repositories which can be read by Git.
+     * @throws IOException if there are some problems with {@link #INDEX_FILE}.
+     */
+    public static CommitIndex forRepositories(Collection<Path> repositories) throws IOException {
+        return forRepositories(CommitIndex::new, INDEX_FILE, repositories);
+    }
+
+    /**
+     * Collects all the commits reachable from any reference of the repository.
+     *
+     * @param repository repository (.git directory) to index.
+     * @return commit hash prefixes or null if Git cannot read the repository.
+     * @throws IOException if Git cannot be started.
+     */
+    @Override
+    long[] collect(Path repository) throws IOException {
+        Process process = new ProcessBuilder()
+                .directory(repository.toFile())
+                .redirectError(ProcessBuilder.Redirect.DISCARD)
+                .command("git", "rev-list", "--all")
+                .start();
+        long[] keys = new long[1024];
+        int size = 0;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.length() < 40) continue;
+                if (size == keys.length) keys = Arrays.copyOf(keys, size * 2);
+                keys[size++] = key(line);
+            }
+        }
+        try {
+            if (process.waitFor() != 0) return null;
+        } catch (InterruptedException e) {
+            process.destroy();
+            Thread.currentThread().interrupt();
+            return null;
+        }
+        return Arrays.copyOf(keys, size);
+    }
+
+    /**
+     * Commits reachable from references change only when references do, so loose and packed references are checked.
+     */
+    @Override
+    long freshness(Path repository) {
+        return modificationKey(repository, "packed-refs", "refs");
+    }
+}
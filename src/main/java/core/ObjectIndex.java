@@ -0,0 +1,111 @@
+package core;
+
+import java.io.*;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Compact index of all the packed objects (commits, trees and blobs) present in source repositories,
+ * see {@link RepositoryIndex}. Unlike {@link CommitIndex} it finds repositories sharing content
+ * but not history, e.g. squashed imports or vendored copies.
+ * Objects are read directly from pack ".idx" files, loose objects are not indexed.
+ */
+public class ObjectIndex extends RepositoryIndex {
+
+    /**
+     * The file where the index is stored. Binary, updated by "scan --content-index" and on demand when cloning.
+     */
+    public static final File INDEX_FILE = new File("source_objects_index");
+
+    private static final int PACK_INDEX_SIGNATURE = 0xff744f63;
+    private static final int FANOUT_SIZE = 256;
+    private static final int HASH_LENGTH = 20;
+
+    /**
+     * Loads the index from {@link #INDEX_FILE}, indexes the repositories which are not in the file yet
+     * or whose packs have changed, drops the repositories not given and saves the index back if anything has changed.
+     *
+     * @param repositories repositories (.git directories) to have in the index.
+     * @return index containing those of the repositories which can be read.
+     * @throws IOException if there are some problems with {@link #INDEX_FILE}.
+     */
+    public static ObjectIndex forRepositories(Collection<Path> repositories) throws IOException {
+        return forRepositories(ObjectIndex::new, INDEX_FILE, repositories);
+    }
+
+    /**
+     * Collects the objects from all the pack index files of the repository.
+     *
+     * A pack removed meanwhile (by repack or "multi-pack-index expire") is skipped, its objects are in other packs.
+     *
+     * @param repository repository (.git directory) to index.
+     * @return object hash prefixes or null if the repository has no packs directory or some pack index cannot be read,
+     * so a single broken source does not prevent using the others.
+     */
+    @Override
+    long[] collect(Path repository) {
+        Path packDirectory = repository.resolve("objects").resolve("pack");
+        if (!Files.isDirectory(packDirectory)) return null;
+        long[] keys = new long[0];
+        try (DirectoryStream<Path> packIndexes = Files.newDirectoryStream(packDirectory, "*.idx")) {
+            for (Path packIndex : packIndexes) {
+                long[] packKeys;
+                try {
+                    packKeys = readPackIndex(packIndex.toFile());
+                } catch (FileNotFoundException e) {
+                    continue;
+                }
+                int size = keys.length;
+                keys = Arrays.copyOf(keys, size + packKeys.length);
+                System.arraycopy(packKeys, 0, keys, size, packKeys.length);
+            }
+        } catch (IOException | DirectoryIteratorException e) {
+            return null;
+        }
+        return keys;
+    }
+
+    /**
+     * Packs are only added and removed (by fetch, gc or repack), which is seen in the packs directory.
+     */
+    @Override
+    long freshness(Path repository) {
+        return modificationKey(repository, "objects/pack");
+    }
+
+    /**
+     * Reads object hash prefixes from a pack index file of version 1 or 2.
+     *
+     * @param file pack index file.
+     * @return object hash prefixes.
+     * @throws IOException if the file cannot be read or is not a pack index.
+     */
+    private static long[] readPackIndex(File file) throws IOException {
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            int first = input.readInt();
+            boolean versionTwo = first == PACK_INDEX_SIGNATURE;
+            if (versionTwo) {
+                int version = input.readInt();
+                if (version != 2) throw new IOException("Unsupported pack index version " + version + ": " + file);
+                first = input.readInt();
+            }
+            // The last fanout entry is the number of objects in the pack
+            int objectCount = first;
+            for (int i = 1; i < FANOUT_SIZE; i++) {
+                objectCount = input.readInt();
+            }
+            long[] keys = new long[objectCount];
+            byte[] skipped = new byte[HASH_LENGTH];
+            for (int i = 0; i < objectCount; i++) {
+                if (!versionTwo) input.readFully(skipped, 0, 4); // Version 1 stores the offset before every hash
+                keys[i] = input.readLong();
+                input.readFully(skipped, 0, HASH_LENGTH - Long.BYTES);
+            }
+            return keys;
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package core;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Compact index of Git objects present in source repositories.
+ * Every object is stored as the first 64 bits of its hash in a sorted array per repository,
+ * so looking up an object is a binary search and false positives are practically impossible.
+ * Subclasses decide which objects of a repository are indexed and when the repository has to be indexed again.
+ */
+abstract class RepositoryIndex {
+
+    private static final int FORMAT_VERSION = 2;
+
+    /**
+     * Stores sorted hash prefixes for every indexed repository (.git directory).
+     */
+    private final Map<Path, long[]> objects = new HashMap<>();
+
+    /**
+     * Stores {@link #freshness(Path)} of every indexed repository as it was before collecting its objects.
+     */
+    private final Map<Path, Long> freshness = new HashMap<>();
+
+    /**
+     * Collects the objects of the repository.
+     *
+     * @param repository repository (.git directory) to index.
+     * @return hash prefixes in any order or null if the repository cannot be read.
+     * @throws IOException if there are some problems with access to the repository.
+     */
+    abstract long[] collect(Path repository) throws IOException;
+
+    /**
+     * Tells cheaply if the objects of the repository may have changed since it was indexed.
+     *
+     * @param repository repository (.git directory) to check.
+     * @return value which is different whenever {@link #collect(Path)} may return other objects.
+     */
+    abstract long freshness(Path repository);
+
+    /**
+     * Combines modification times of the files and of everything inside the directories.
+     * Adding, removing or rewriting any of them changes the result.
+     *
+     * @param repository repository (.git directory) to check.
+     * @param paths      files and directories relative to the repository, missing ones are ignored.
+     * @return modification key or 0 if some of the files cannot be read.
+     */
+    static long modificationKey(Path repository, String... paths) {
+        long key = 0;
+        try {
+            for (String path : paths) {
+                Path root = repository.resolve(path);
+                if (!Files.exists(root)) continue;
+                try (Stream<Path> files = Files.walk(root)) {
+                    for (Path file : (Iterable<Path>) files::iterator) {
+                        key += 31 * file.hashCode() + Files.getLastModifiedTime(file).toMillis();
+                    }
+                }
+            }
+        } catch (IOException | UncheckedIOException e) {
+            return 0; // Changing right now, checked again next time
+        }
+        return key;
+    }
+
+    /**
+     * Loads the index from the file, indexes the repositories which are not in the file yet or have changed
+     * since they were indexed (see {@link #freshness(Path)}), drops the ones which are not requested anymore
+     * and saves the index back if anything has changed.
+     *
+     * @param factory      creates an empty index.
+     * @param file         file where the index is stored.
+     * @param repositories repositories (.git directories) to have in the index.
+     * @return index containing those of the repositories which can be read.
+     * @throws IOException if there are some problems with the file.
+     */
+    static <T extends RepositoryIndex> T forRepositories(Supplier<T> factory, File file, Collection<Path> repositories) throws IOException {
+        T result = factory.get();
+        RepositoryIndex index = result;
+        if (file.exists()) index.load(file);
+        Set<Path> requested = new HashSet<>();
+        boolean changed = false;
+        for (Path repository : repositories) {
+            Path path = repository.toAbsolutePath();
+            requested.add(path);
+            Long indexedFreshness = index.freshness.get(path);
+            if (indexedFreshness == null || indexedFreshness != index.freshness(path)) {
+                if (index.add(repository)) {
+                    changed = true;
+                } else if (index.freshness.remove(path) != null) {
+                    // Outdated objects of a repository which cannot be read anymore are not kept
+                    index.objects.remove(path);
+                    changed = true;
+                }
+            }
+        }
+        changed |= index.objects.keySet().retainAll(requested);
+        index.freshness.keySet().retainAll(requested);
+        if (changed) index.save(file);
+        return result;
+    }
+
+    /**
+     * Counts how many of the objects every repository contains.
+     *
+     * @param hashes full object hashes.
+     * @return number of objects found for every repository (.git directory) containing any of them.
+     */
+    public Map<Path, Integer> matches(Collection<String> hashes) {
+        long[] keys = hashes.stream().mapToLong(RepositoryIndex::key).toArray();
+        Map<Path, Integer> matches = new HashMap<>();
+        for (Map.Entry<Path, long[]> entry : objects.entrySet()) {
+            int count = 0;
+            for (long key : keys) {
+                if (Arrays.binarySearch(entry.getValue(), key) >= 0) count++;
+            }
+            if (count > 0) matches.put(entry.getKey(), count);
+        }
+        return matches;
+    }
+
+    /**
+     * Finds the repository containing the biggest number of the objects.
+     *
+     * @param hashes full object hashes.
+     * @return repository (.git directory) or null if no repository contains any of the objects.
+     */
+    public Path bestMatch(Collection<String> hashes) {
+        return matches(hashes).entrySet().stream()
+                .max(Map.Entry.comparingByValue())
+                .map(Map.Entry::getKey)
+                .orElse(null);
+    }
+
+    static long key(String hash) {
+        return Long.parseUnsignedLong(hash.substring(0, 16), 16);
+    }
+
+    private boolean add(Path repository) throws IOException {
+        if (!Files.isDirectory(repository)) return false;
+        // Taken before collecting, so changes made meanwhile are noticed next time
+        long currentFreshness = freshness(repository);
+        long[] keys = collect(repository);
+        if (keys == null) return false;
+        Arrays.sort(keys);
+        objects.put(repository.toAbsolutePath(), keys);
+        freshness.put(repository.toAbsolutePath(), currentFreshness);
+        return true;
+    }
+
+    private void load(File file) throws IOException {
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (input.readInt() != FORMAT_VERSION) return; // Outdated index is rebuilt by the caller
+            int repositoryCount = input.readInt();
+            for (int i = 0; i < repositoryCount; i++) {
+                Path repository = Path.of(input.readUTF());
+                freshness.put(repository, input.readLong());
+                long[] keys = new long[input.readInt()];
+                for (int j = 0; j < keys.length; j++) {
+                    keys[j] = input.readLong();
+                }
+                objects.put(repository, keys);
+            }
+        } catch (EOFException e) {
+            throw new IllegalStateException("\"" + file.getName() + "\" is corrupted, remove it and run scan again");
+        }
+    }
+
+    /**
+     * Writes the index to a temporary file first, so concurrent readers never see a partially written index.
+     */
+    private void save(File file) throws IOException {
+        Path target = file.toPath().toAbsolutePath();
+        Path temporary = Files.createTempFile(target.getParent(), file.getName(), ".tmp");
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary.toFile())))) {
+            output.writeInt(FORMAT_VERSION);
+            output.writeInt(objects.size());
+            for (Map.Entry<Path, long[]> entry : objects.entrySet()) {
+                output.writeUTF(entry.getKey().toString());
+                output.writeLong(freshness.get(entry.getKey()));
+                output.writeInt(entry.getValue().length);
+                for (long key : entry.getValue()) {
+                    output.writeLong(key);
+                }
+            }
+        }
+        Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
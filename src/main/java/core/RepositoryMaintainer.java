@@ -0,0 +1,134 @@
+package core;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static core.RepositoryScanner.REPOS_FILE;
+import static core.RepositoryScanner.WK_REPOS_FILE;
+
+/**
+ * Keeps source repositories fast to borrow objects from with "--reference".
+ * Writes commit-graphs, packs loose objects, builds multi-pack-indexes and consolidates small packs incrementally.
+ * Objects are never pruned: packs are only removed by "git multi-pack-index expire",
+ * which deletes a pack only when all of its objects are present in other packs,
+ * so clones depending on the source through alternates never lose objects.
+ * Repositories are maintained one by one with a pause in between, and Git uses a single thread
+ * for packing, so maintenance does not starve active clones of I/O.
+ */
+public class RepositoryMaintainer {
+
+    private final String batchSize;
+    private final Duration pause;
+
+    /**
+     * @param batchSize packs smaller than this (e.g. "512m") are consolidated into new packs until their total size reaches it.
+     * @param pause     pause between maintaining two repositories.
+     */
+    public RepositoryMaintainer(String batchSize, Duration pause) {
+        this.batchSize = batchSize;
+        this.pause = pause;
+    }
+
+    /**
+     * Maintains every repository from {@link RepositoryScanner#REPOS_FILE} and {@link RepositoryScanner#WK_REPOS_FILE}.
+     *
+     * @param notices receives messages about maintained repositories and failures.
+     * @return number of repositories maintained.
+     * @throws IOException          if there are some problems with {@link RepositoryScanner#REPOS_FILE}.
+     * @throws InterruptedException if interrupted while maintaining or pausing.
+     */
+    public int maintainAll(Consumer<String> notices) throws IOException, InterruptedException {
+        Set<Path> repositories = new LinkedHashSet<>();
+        for (Path repository : RepositoryScanner.getFromFile(REPOS_FILE).values()) {
+            repositories.add(repository.toAbsolutePath());
+        }
+        try {
+            for (Path repository : RepositoryScanner.getFromFile(WK_REPOS_FILE).values()) {
+                repositories.add(repository.toAbsolutePath());
+            }
+        } catch (FileNotFoundException ignored) {
+        }
+
+        int count = 0;
+        for (Path repository : repositories) {
+            if (!Files.isDirectory(repository)) {
+                notices.accept("Skip missing repository " + repository);
+                continue;
+            }
+            if (count > 0) Thread.sleep(pause.toMillis());
+            try {
+                maintain(repository);
+                notices.accept("Maintained " + repository);
+                count++;
+            } catch (IllegalStateException | IOException e) {
+                notices.accept("Cannot maintain " + repository + ": " + e.getMessage());
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Maintains a single repository.
+     *
+     * @param repository repository (.git directory) to maintain.
+     * @throws IOException           see {@link Cloner#runGit(List, File)}.
+     * @throws InterruptedException  see {@link Cloner#runGit(List, File)}.
+     * @throws IllegalStateException see {@link Cloner#runGit(List, File)}.
+     */
+    public void maintain(Path repository) throws IOException, InterruptedException, IllegalStateException {
+        File directory = repository.toFile();
+        Cloner.runGit(Arrays.asList("git", "commit-graph", "write", "--reachable", "--split"), directory);
+        // Local clones have loose objects only, the task packs them and deletes only loose objects present in packs
+        Cloner.runGit(Arrays.asList("git", "-c", "pack.threads=1", "maintenance", "run", "--task=loose-objects"), directory);
+        if (!hasPacks(repository)) return; // Nothing to index, e.g. no commits yet
+        Cloner.runGit(Arrays.asList("git", "multi-pack-index", "write"), directory);
+        // Drops only packs whose objects are all in other packs since the previous consolidation
+        Cloner.runGit(Arrays.asList("git", "multi-pack-index", "expire"), directory);
+        Cloner.runGit(Arrays.asList("git", "-c", "pack.threads=1",
+                "multi-pack-index", "repack", "--batch-size=" + batchSize), directory);
+    }
+
+    private static boolean hasPacks(Path repository) throws IOException {
+        Path packDirectory = repository.resolve("objects").resolve("pack");
+        if (!Files.isDirectory(packDirectory)) return false;
+        try (DirectoryStream<Path> packs = Files.newDirectoryStream(packDirectory, "*.pack")) {
+            return packs.iterator().hasNext();
+        }
+    }
+
+    /**
+     * Runs {@link #maintainAll(Consumer)} periodically in a background thread.
+     *
+     * @param period  delay between the end of a maintenance and the start of the next one.
+     * @param notices receives messages about maintained repositories and failures.
+     * @return future which can be cancelled to stop maintenance.
+     */
+    public ScheduledFuture<?> schedule(Duration period, Consumer<String> notices) {
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "ddgit-maintenance");
+            thread.setDaemon(true);
+            return thread;
+        });
+        return scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                maintainAll(notices);
+            } catch (IOException e) {
+                notices.accept("Error: " + e.getMessage());
+            } catch (InterruptedException e) {
+                scheduler.shutdown();
+                Thread.currentThread().interrupt();
+            }
+        }, 0, period.toMillis(), TimeUnit.MILLISECONDS);
+    }
+}
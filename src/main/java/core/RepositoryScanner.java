@@ -3,10 +3,14 @@ package core;
 import java.io.*;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Scanner;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 public class RepositoryScanner {
@@ -62,7 +66,7 @@ public class RepositoryScanner {
      * @param file File where repositories will be stored with their features.
      * @throws IOException if there are some problems with the file.
      */
-    private static void writeToFile(File file, Map<String, Path> repositoriesToWrite) throws IOException {
+    static void writeToFile(File file, Map<String, Path> repositoriesToWrite) throws IOException {
         if (file.exists() && file.canWrite() || file.createNewFile()) {
             Map<String, Path> existingRepositories = getFromFile(file);
             try (BufferedWriter writer = new BufferedWriter(new FileWriter(file, true))) {
@@ -85,43 +89,144 @@ public class RepositoryScanner {
         }
     }
 
+    /**
+     * Removes the repositories placed in any of the directories from the file.
+     *
+     * @param file        File where repositories are stored with their features (hashes or URLs).
+     * @param directories deleted directories.
+     * @return paths of the repositories removed.
+     * @throws IOException if there are some problems with the file.
+     */
+    static List<Path> removeFromFile(File file, Collection<Path> directories) throws IOException {
+        Map<String, Path> existingRepositories = getFromFile(file);
+        StringBuilder builder = new StringBuilder();
+        List<Path> removed = new ArrayList<>();
+        for (Map.Entry<String, Path> entry : existingRepositories.entrySet()) {
+            Path path = entry.getValue().toAbsolutePath();
+            if (directories.stream().anyMatch(path::startsWith)) {
+                removed.add(path);
+            } else {
+                builder.append(entry.getKey()).append(' ').append(path).append(" \n");
+            }
+        }
+        if (!removed.isEmpty()) {
+            Path temporary = Files.createTempFile(file.toPath().toAbsolutePath().getParent(), file.getName(), ".tmp");
+            Files.writeString(temporary, builder);
+            Files.move(temporary, file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        return removed;
+    }
+
     /**
      * Scans the filesystem to find Git repositories.
+     * Also updates {@link CommitIndex} for all the source repositories.
      *
      * @param roots paths to directories to start scanning from.
      * @return number of repositories found.
      * @throws IOException if directories to scan are not specified.
      */
     public static int scan(String... roots) throws IOException, InterruptedException {
+        return scan(new ScanOptions(), roots).getRepositoriesFound();
+    }
+
+    /**
+     * Scans the filesystem to find Git repositories, skipping directories according to the options
+     * and to {@link ScanOptions#IGNORE_FILE_NAME} files.
+     * Also updates {@link CommitIndex} and optionally {@link ObjectIndex} for all the source repositories.
+     *
+     * @param options rules telling which directories to skip.
+     * @param roots   paths to directories to start scanning from.
+     * @return number of repositories found with the numbers of directories visited and skipped.
+     * @throws IOException if directories to scan are not specified.
+     */
+    public static ScanResult scan(ScanOptions options, String... roots) throws IOException, InterruptedException {
+        return scan(options, null, roots);
+    }
+
+    /**
+     * Scans the filesystem like {@link #scan(ScanOptions, String...)}, reporting every directory entered.
+     *
+     * @param options           rules telling which directories to skip.
+     * @param directoryListener receives every directory entered (called from several threads), may be null.
+     * @param roots             paths to directories to start scanning from.
+     * @return number of repositories found with the numbers of directories visited and skipped.
+     * @throws IOException if directories to scan are not specified.
+     */
+    static ScanResult scan(ScanOptions options, Consumer<Path> directoryListener, String... roots) throws IOException, InterruptedException {
         repositories = new HashMap<>();
+        RepositoryVisitor[] visitors = new RepositoryVisitor[roots.length];
         Thread[] threads = new Thread[roots.length];
         for (int i = 0; i < roots.length; i++) {
             String root = roots[i];
+            RepositoryVisitor visitor = visitors[i] = createVisitor(getRootOptions(options, root), root, roots);
+            if (directoryListener != null)
+                visitor.setDirectoryListener(directoryListener);
             threads[i] = new Thread(() -> {
-                RepositoryVisitor visitor = new RepositoryVisitor();
-                visitor.setExcludes(
-                        List.of(roots).stream()
-                                .map(s -> Path.of(s))
-                                .filter(it -> {
-                                    try {
-                                        return !Files.isSameFile(it, Path.of(root)) && it.startsWith(root);
-                                    } catch (IOException ignored) {
-                                    }
-                                    return false;
-                                }).collect(Collectors.toList()));
                 try {
                     Files.walkFileTree(Path.of(root), visitor);
                 } catch (IOException ignored) {
                 }
-                repositories.putAll(visitor.getRepositories());
             });
             threads[i].start();
         }
-        for (Thread thread : threads) {
-            thread.join();
+        long directoriesVisited = 0;
+        long directoriesPruned = 0;
+        for (int i = 0; i < roots.length; i++) {
+            threads[i].join();
+            repositories.putAll(visitors[i].getRepositories());
+            directoriesVisited += visitors[i].getDirectoriesVisited();
+            directoriesPruned += visitors[i].getDirectoriesPruned();
         }
         writeToFile(REPOS_FILE, repositories);
-        return repositories.size();
+        Collection<Path> sourceRepositories = getFromFile(REPOS_FILE).values();
+        // Only repositories which are new or have changed since the last scan are indexed again
+        CommitIndex.forRepositories(sourceRepositories);
+        if (options.isBuildContentIndex())
+            ObjectIndex.forRepositories(sourceRepositories);
+        return new ScanResult(repositories.size(), directoriesVisited, directoriesPruned);
+    }
+
+    /**
+     * Completes the options with patterns from {@link ScanOptions#IGNORE_FILE_NAME} files
+     * in the program directory and in the directory to scan.
+     *
+     * @param options rules given by user.
+     * @param root    directory to scan.
+     * @return rules to scan the directory with.
+     * @throws IOException if ignore files cannot be read.
+     */
+    static ScanOptions getRootOptions(ScanOptions options, String root) throws IOException {
+        return new ScanOptions()
+                .ignore(options.getIgnorePatterns())
+                .ignore(ScanOptions.readIgnoreFile(Path.of(System.getProperty("user.dir"))))
+                .ignore(ScanOptions.readIgnoreFile(Path.of(root)))
+                .maxDepth(options.getMaxDepth())
+                .oneFileSystem(options.isOneFileSystem())
+                .skipWellKnown(options.isSkipWellKnown());
+    }
+
+    /**
+     * Creates a visitor for one of the directories to scan, which does not enter the other ones.
+     *
+     * @param rootOptions rules to scan the directory with, see {@link #getRootOptions(ScanOptions, String)}.
+     * @param root        directory to scan.
+     * @param roots       all the directories to scan.
+     * @return new visitor.
+     * @throws IOException if the directory cannot be read.
+     */
+    static RepositoryVisitor createVisitor(ScanOptions rootOptions, String root, String... roots) throws IOException {
+        RepositoryVisitor visitor = new RepositoryVisitor(Path.of(root), rootOptions);
+        visitor.setExcludes(
+                List.of(roots).stream()
+                        .map(s -> Path.of(s))
+                        .filter(it -> {
+                            try {
+                                return !Files.isSameFile(it, Path.of(root)) && it.startsWith(root);
+                            } catch (IOException ignored) {
+                            }
+                            return false;
+                        }).collect(Collectors.toList()));
+        return visitor;
     }
 }
 
@@ -3,24 +3,79 @@ package core;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.nio.file.FileVisitResult;
-import java.nio.file.FileVisitor;
-import java.nio.file.Path;
+import java.nio.file.*;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.util.*;
+import java.util.function.Consumer;
 
 import static java.nio.file.FileVisitResult.CONTINUE;
 import static java.nio.file.FileVisitResult.SKIP_SIBLINGS;
+import static java.nio.file.FileVisitResult.SKIP_SUBTREE;
 
 public class RepositoryVisitor implements FileVisitor<Path> {
 
+    /**
+     * Directories which hold dependencies or tool caches and are not expected to contain source repositories.
+     * Generic names which may be workspace roots (build, target, dist etc.) are not here, use ignore patterns for them.
+     */
+    public static final Set<String> HEAVY_DIRECTORIES = Set.of(
+            "node_modules", "bower_components", ".npm", ".yarn", ".gradle", ".m2", ".ivy2", ".cargo", ".rustup",
+            "__pycache__", ".venv", ".tox", ".terraform");
+
+    /**
+     * Filesystem types which are virtual (no repositories there) or remote (too slow to walk).
+     */
+    private static final Set<String> SPECIAL_FILESYSTEMS = Set.of(
+            "proc", "sysfs", "devtmpfs", "devpts", "cgroup", "cgroup2", "debugfs", "tracefs", "securityfs", "pstore",
+            "bpf", "autofs", "configfs", "fusectl", "mqueue", "hugetlbfs", "binfmt_misc",
+            "nfs", "nfs4", "cifs", "smbfs", "smb3", "afs", "9p", "sshfs", "fuse.sshfs", "davfs", "fuse.rclone");
+
+    private static final boolean UNIX_ATTRIBUTES = FileSystems.getDefault().supportedFileAttributeViews().contains("unix");
+
     /**
      * Stores all the repositories found with their root commit hashes.
      */
     private final Map<String, Path> repositories = new HashMap<>();
     private final Set<Path> excludes = new HashSet<>();
 
-    private static String getInitialCommitHash(Path path) throws IOException {
+    private final Path root;
+    private final ScanOptions options;
+    private final List<PathMatcher> nameMatchers = new ArrayList<>();
+    private final List<PathMatcher> relativePathMatchers = new ArrayList<>();
+    private final List<PathMatcher> absolutePathMatchers = new ArrayList<>();
+    private final Object rootDevice;
+    private final FileStore rootFileStore;
+    private final Map<Object, Boolean> specialDevices = new HashMap<>();
+
+    private Consumer<Path> directoryListener = dir -> {
+    };
+    private long directoriesVisited;
+    private Path workingTree;
+    private long directoriesPruned;
+
+    /**
+     * @param root    directory to start scanning from.
+     * @param options rules telling which directories to skip.
+     * @throws IOException if the root directory cannot be read.
+     */
+    public RepositoryVisitor(Path root, ScanOptions options) throws IOException {
+        this.root = root.toAbsolutePath();
+        this.options = options;
+        FileSystem fileSystem = FileSystems.getDefault();
+        for (String pattern : options.getIgnorePatterns()) {
+            PathMatcher matcher = fileSystem.getPathMatcher("glob:" + pattern);
+            if (pattern.startsWith("/"))
+                absolutePathMatchers.add(matcher);
+            else if (pattern.contains("/"))
+                relativePathMatchers.add(matcher);
+            else
+                nameMatchers.add(matcher);
+        }
+        rootDevice = UNIX_ATTRIBUTES ? Files.getAttribute(this.root, "unix:dev") : null;
+        rootFileStore = !UNIX_ATTRIBUTES && options.isOneFileSystem() ? Files.getFileStore(this.root) : null;
+    }
+
+    static String getInitialCommitHash(Path path) throws IOException {
         String[] command = {"git", "log", "--reverse", "--all", "--pretty=oneline"};
         ProcessBuilder builder = new ProcessBuilder().directory(path.toFile()).command(command);
         Process process = builder.start();
@@ -35,22 +90,99 @@ public class RepositoryVisitor implements FileVisitor<Path> {
         return repositories;
     }
 
+    public long getDirectoriesVisited() {
+        return directoriesVisited;
+    }
+
+    public long getDirectoriesPruned() {
+        return directoriesPruned;
+    }
+
     public void setExcludes(List<Path> paths) {
         excludes.addAll(paths);
     }
 
+    /**
+     * @param listener receives every directory which is entered, i.e. not skipped and not a .git directory.
+     *                 Directories inside working trees of repositories are not received, only the roots of working trees.
+     */
+    public void setDirectoryListener(Consumer<Path> listener) {
+        directoryListener = listener;
+    }
+
     @Override
     public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
-        if (excludes.contains(dir)) return FileVisitResult.SKIP_SUBTREE;
+        if (excludes.contains(dir) || isPruned(dir.toAbsolutePath())) {
+            directoriesPruned++;
+            return SKIP_SUBTREE;
+        }
+        directoriesVisited++;
         if (attrs.isDirectory() && dir.endsWith(".git")) {
             String initialCommitHash = getInitialCommitHash(dir);
             if (initialCommitHash != null)
                 repositories.put(initialCommitHash, dir);
             return SKIP_SIBLINGS; // Expecting user not to have a repository inside other repository
         }
+        if (workingTree == null || !dir.startsWith(workingTree)) {
+            directoryListener.accept(dir);
+            if (Files.isDirectory(dir.resolve(".git"), LinkOption.NOFOLLOW_LINKS))
+                workingTree = dir;
+        }
         return CONTINUE;
     }
 
+    /**
+     * Tells if the directory should be skipped with all of its contents.
+     *
+     * @param dir absolute path of the directory.
+     * @return true if the directory matches any of the {@link ScanOptions} rules.
+     */
+    private boolean isPruned(Path dir) {
+        if (dir.equals(root)) return false;
+        Path relativePath = root.relativize(dir);
+        int depth = relativePath.getNameCount();
+        boolean isGitDirectory = dir.endsWith(".git");
+        // .git directory is one level deeper than its repository
+        if (depth - (isGitDirectory ? 1 : 0) > options.getMaxDepth()) return true;
+        if (isGitDirectory) return false;
+
+        Path name = dir.getFileName();
+        if (options.isSkipWellKnown() && HEAVY_DIRECTORIES.contains(name.toString())) return true;
+        for (PathMatcher matcher : nameMatchers) {
+            if (matcher.matches(name)) return true;
+        }
+        for (PathMatcher matcher : relativePathMatchers) {
+            if (matcher.matches(relativePath)) return true;
+        }
+        for (PathMatcher matcher : absolutePathMatchers) {
+            if (matcher.matches(dir)) return true;
+        }
+        return isOnOtherFileSystem(dir);
+    }
+
+    /**
+     * Tells if the directory is on a filesystem which should not be scanned.
+     */
+    private boolean isOnOtherFileSystem(Path dir) {
+        try {
+            if (!UNIX_ATTRIBUTES) {
+                return rootFileStore != null && !rootFileStore.equals(Files.getFileStore(dir));
+            }
+            Object device = Files.getAttribute(dir, "unix:dev", LinkOption.NOFOLLOW_LINKS);
+            if (device.equals(rootDevice)) return false;
+            if (options.isOneFileSystem()) return true;
+            if (!options.isSkipWellKnown()) return false;
+            Boolean special = specialDevices.get(device);
+            if (special == null) {
+                special = SPECIAL_FILESYSTEMS.contains(Files.getFileStore(dir).type());
+                specialDevices.put(device, special);
+            }
+            return special;
+        } catch (IOException | UnsupportedOperationException e) {
+            return false;
+        }
+    }
+
     @Override
     public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
         return CONTINUE;
@@ -63,6 +195,7 @@ public class RepositoryVisitor implements FileVisitor<Path> {
 
     @Override
     public FileVisitResult postVisitDirectory(Path dir, IOException exc) {
+        if (dir.equals(workingTree)) workingTree = null;
         return CONTINUE;
     }
 }
@@ -0,0 +1,273 @@
+package core;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import static core.RepositoryScanner.REPOS_FILE;
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/**
+ * Keeps {@link RepositoryScanner#REPOS_FILE} up to date by watching the filesystem instead of scanning it again.
+ * The directories are scanned once (see {@link RepositoryScanner#scan(ScanOptions, String...)}), every directory entered
+ * is registered in a {@link WatchService}. Then repositories created in the watched directories (including clones
+ * made by ddgit) are added to the file and deleted ones are removed from it.
+ * Events are collected until the filesystem is quiet for the debounce period and applied to the file in one batch.
+ */
+public class RepositoryWatcher {
+
+    /**
+     * A batch is applied even if events keep coming, when the first of them is older than this number of debounce periods.
+     */
+    private static final int MAX_BATCH_DELAY = 10;
+
+    /**
+     * Directories of a new repository (relative to its .git directory) where its first reference appears.
+     */
+    private static final List<String> REFERENCE_DIRECTORIES = List.of("", "refs", "refs/heads");
+
+    private final ScanOptions options;
+    private final Duration debounce;
+    private final Consumer<String> notices;
+
+    private final Map<WatchKey, Path> watchedDirectories = new ConcurrentHashMap<>();
+    private final Map<Path, ScanOptions> rootOptions = new HashMap<>();
+    private final Set<Path> createdDirectories = new LinkedHashSet<>();
+    private final Set<Path> deletedDirectories = new LinkedHashSet<>();
+    private final Map<Path, Set<WatchKey>> unbornRepositories = new HashMap<>();
+    private final Map<WatchKey, Path> unbornRepositoryKeys = new HashMap<>();
+    private boolean referencesChanged;
+    private WatchService watchService;
+    private String[] roots;
+    private final AtomicInteger registrationFailures = new AtomicInteger();
+    private volatile IOException registrationFailure;
+
+    /**
+     * @param options  rules telling which directories to skip, they are applied to new directories too.
+     * @param debounce how long the filesystem must be quiet before changes are applied.
+     * @param notices  receives messages about added and removed repositories.
+     */
+    public RepositoryWatcher(ScanOptions options, Duration debounce, Consumer<String> notices) {
+        this.options = options;
+        this.debounce = debounce;
+        this.notices = notices;
+    }
+
+    /**
+     * Scans the directories and then watches them until the thread is interrupted.
+     *
+     * @param roots paths to directories to watch.
+     * @throws IOException          if there are some problems with {@link RepositoryScanner#REPOS_FILE} or with the directories.
+     * @throws InterruptedException when the thread is interrupted, which is the normal way to stop watching.
+     */
+    public void watch(String... roots) throws IOException, InterruptedException {
+        this.roots = roots;
+        try (WatchService service = FileSystems.getDefault().newWatchService()) {
+            watchService = service;
+            for (String root : roots) {
+                rootOptions.put(Path.of(root).toAbsolutePath(), RepositoryScanner.getRootOptions(options, root));
+            }
+            ScanResult result = RepositoryScanner.scan(options, this::register, roots);
+            notices.accept(result.getRepositoriesFound() + " repositories found, watching "
+                    + watchedDirectories.size() + " directories.");
+            reportRegistrationFailures();
+
+            long batchStart = 0;
+            while (true) {
+                boolean pending = !createdDirectories.isEmpty() || !deletedDirectories.isEmpty() || referencesChanged;
+                WatchKey key = pending
+                        ? watchService.poll(debounce.toMillis(), TimeUnit.MILLISECONDS)
+                        : watchService.take();
+                if (key != null) {
+                    if (!pending)
+                        batchStart = System.nanoTime();
+                    collectEvents(key);
+                    if (System.nanoTime() - batchStart < debounce.toNanos() * MAX_BATCH_DELAY)
+                        continue;
+                }
+                applyBatch();
+                reportRegistrationFailures();
+            }
+        } catch (ClosedWatchServiceException e) {
+            throw new InterruptedException("Watch service closed.");
+        }
+    }
+
+    /**
+     * Starts watching the directory, errors are counted and reported by {@link #reportRegistrationFailures()}.
+     */
+    private void register(Path dir) {
+        WatchKey key = register(dir, ENTRY_CREATE, ENTRY_DELETE);
+        if (key != null)
+            watchedDirectories.put(key, dir.toAbsolutePath());
+    }
+
+    private WatchKey register(Path dir, WatchEvent.Kind<?>... events) {
+        try {
+            return dir.toAbsolutePath().register(watchService, events);
+        } catch (IOException e) {
+            registrationFailure = e;
+            registrationFailures.incrementAndGet();
+            return null;
+        }
+    }
+
+    /**
+     * Starts watching the repository which has no commits yet (e.g. while it is being cloned) for its first reference.
+     * Called again on every change, as the reference directories may be created later than the repository.
+     */
+    private void watchUnbornRepository(Path repository) {
+        Set<WatchKey> keys = unbornRepositories.computeIfAbsent(repository, it -> new HashSet<>());
+        for (String directory : REFERENCE_DIRECTORIES) {
+            Path path = repository.resolve(directory);
+            if (!Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) continue;
+            WatchKey key = register(path, ENTRY_CREATE, ENTRY_MODIFY);
+            if (key != null && keys.add(key))
+                unbornRepositoryKeys.put(key, repository);
+        }
+    }
+
+    private void forgetUnbornRepository(Path repository) {
+        for (WatchKey key : unbornRepositories.remove(repository)) {
+            key.cancel();
+            unbornRepositoryKeys.remove(key);
+        }
+    }
+
+    /**
+     * Tells how many directories could not be watched since the last report, repositories created there are missed.
+     * The usual reason is the limit of watches per user (fs.inotify.max_user_watches on Linux).
+     */
+    private void reportRegistrationFailures() {
+        int failures = registrationFailures.getAndSet(0);
+        if (failures == 0) return;
+        notices.accept("Cannot watch " + failures + " directories, repositories created there will be missed: "
+                + registrationFailure);
+    }
+
+    private static boolean isWorkingTree(Path dir) {
+        return Files.isDirectory(dir.resolve(".git"), LinkOption.NOFOLLOW_LINKS);
+    }
+
+    private void collectEvents(WatchKey key) {
+        if (unbornRepositoryKeys.containsKey(key)) {
+            // The repository is checked again in the next batch
+            key.pollEvents();
+            referencesChanged = true;
+            if (!key.reset())
+                unbornRepositoryKeys.remove(key);
+            return;
+        }
+        Path dir = watchedDirectories.get(key);
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (dir == null) continue;
+            if (event.kind() == OVERFLOW) {
+                // Some events are lost, look through the whole directory again
+                createdDirectories.add(dir);
+                continue;
+            }
+            Path path = dir.resolve((Path) event.context());
+            // Only root directories of working trees are watched, to notice their .git directories
+            if (!path.endsWith(".git") && isWorkingTree(dir)) continue;
+            if (event.kind() == ENTRY_CREATE) {
+                if (Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS))
+                    createdDirectories.add(path);
+            } else {
+                deletedDirectories.add(path);
+                createdDirectories.remove(path);
+            }
+        }
+        if (!key.reset())
+            watchedDirectories.remove(key);
+    }
+
+    /**
+     * Scans created directories, registers them and writes all the changes to {@link RepositoryScanner#REPOS_FILE}.
+     */
+    private void applyBatch() throws IOException {
+        // Deletions go first, so a repository deleted and created again at the same path (e.g. "rm -rf ws && git clone up ws")
+        // is removed and then added back by looking through the path again
+        if (!deletedDirectories.isEmpty()) {
+            for (Path repository : RepositoryScanner.removeFromFile(REPOS_FILE, deletedDirectories)) {
+                if (!Files.exists(repository))
+                    notices.accept("Repository removed: " + repository);
+            }
+            for (Path dir : deletedDirectories) {
+                if (Files.isDirectory(dir, LinkOption.NOFOLLOW_LINKS))
+                    createdDirectories.add(dir);
+            }
+            deletedDirectories.clear();
+        }
+
+        Map<String, Path> added = new HashMap<>();
+        Set<Path> found = new HashSet<>();
+        for (Path dir : createdDirectories) {
+            Path root = findRoot(dir);
+            if (root == null || !Files.isDirectory(dir)) continue;
+            if (dir.endsWith(".git")) {
+                if (!found.contains(dir))
+                    watchUnbornRepository(dir);
+                continue;
+            }
+            RepositoryVisitor visitor = RepositoryScanner.createVisitor(rootOptions.get(root), root.toString(), roots);
+            List<Path> workingTreeRepositories = new ArrayList<>();
+            visitor.setDirectoryListener(directory -> {
+                register(directory);
+                Path repository = directory.resolve(".git").toAbsolutePath();
+                if (Files.isDirectory(repository))
+                    workingTreeRepositories.add(repository);
+            });
+            Files.walkFileTree(dir, visitor);
+
+            for (Map.Entry<String, Path> entry : visitor.getRepositories().entrySet()) {
+                Path repository = entry.getValue().toAbsolutePath();
+                found.add(repository);
+                added.put(entry.getKey(), repository);
+                notices.accept("Repository added: " + repository);
+                if (unbornRepositories.containsKey(repository))
+                    forgetUnbornRepository(repository);
+            }
+            // The visitor reports only repositories having commits, so repositories being cloned are waited for
+            for (Path repository : workingTreeRepositories) {
+                if (!found.contains(repository))
+                    watchUnbornRepository(repository);
+            }
+        }
+        createdDirectories.clear();
+
+        // A repository is added once it has a commit, so clones in progress are checked again until then
+        referencesChanged = false;
+        for (Path repository : new ArrayList<>(unbornRepositories.keySet())) {
+            if (!Files.isDirectory(repository)) {
+                forgetUnbornRepository(repository);
+                continue;
+            }
+            watchUnbornRepository(repository);
+            String initialCommitHash = RepositoryVisitor.getInitialCommitHash(repository);
+            if (initialCommitHash != null) {
+                added.put(initialCommitHash, repository);
+                notices.accept("Repository added: " + repository);
+                forgetUnbornRepository(repository);
+            }
+        }
+        if (!added.isEmpty())
+            RepositoryScanner.writeToFile(REPOS_FILE, added);
+    }
+
+    /**
+     * @return watched root directory containing the directory or null if it is outside all of them.
+     */
+    private Path findRoot(Path dir) {
+        Path best = null;
+        for (Path root : rootOptions.keySet()) {
+            if (dir.startsWith(root) && (best == null || root.startsWith(best)))
+                best = root;
+        }
+        return best;
+    }
+}
@@ -0,0 +1,110 @@
+package core;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Tells {@link RepositoryScanner} which directories are not worth visiting.
+ */
+public class ScanOptions {
+
+    /**
+     * A file with glob patterns of directories to skip, one per line, lines starting with '#' are ignored.
+     * Read from the program directory and from every directory to scan.
+     * Patterns containing '/' are matched against the path relative to the directory to scan
+     * (or against the absolute path if they start with '/'), other patterns are matched against directory names.
+     */
+    public static final String IGNORE_FILE_NAME = ".ddgitignore";
+
+    private final List<String> ignorePatterns = new ArrayList<>();
+    private int maxDepth = Integer.MAX_VALUE;
+    private boolean oneFileSystem;
+    private boolean skipWellKnown = true;
+    private boolean buildContentIndex;
+
+    /**
+     * @param patterns glob patterns of directories to skip, see {@link #IGNORE_FILE_NAME} for syntax.
+     */
+    public ScanOptions ignore(List<String> patterns) {
+        ignorePatterns.addAll(patterns);
+        return this;
+    }
+
+    /**
+     * @param maxDepth how deep a repository may be relative to the directory to scan, 0 means only the directory itself.
+     */
+    public ScanOptions maxDepth(int maxDepth) {
+        if (maxDepth < 0) throw new IllegalArgumentException("Max depth must not be negative: " + maxDepth);
+        this.maxDepth = maxDepth;
+        return this;
+    }
+
+    /**
+     * @param oneFileSystem whether to stay on the filesystem of the directory to scan.
+     */
+    public ScanOptions oneFileSystem(boolean oneFileSystem) {
+        this.oneFileSystem = oneFileSystem;
+        return this;
+    }
+
+    /**
+     * @param skipWellKnown whether to skip dependency caches, virtual and network filesystems,
+     *                      see {@link RepositoryVisitor#HEAVY_DIRECTORIES}. Enabled by default.
+     */
+    public ScanOptions skipWellKnown(boolean skipWellKnown) {
+        this.skipWellKnown = skipWellKnown;
+        return this;
+    }
+
+    /**
+     * @param buildContentIndex whether to update {@link ObjectIndex} after scanning.
+     */
+    public ScanOptions buildContentIndex(boolean buildContentIndex) {
+        this.buildContentIndex = buildContentIndex;
+        return this;
+    }
+
+    public List<String> getIgnorePatterns() {
+        return Collections.unmodifiableList(ignorePatterns);
+    }
+
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    public boolean isOneFileSystem() {
+        return oneFileSystem;
+    }
+
+    public boolean isSkipWellKnown() {
+        return skipWellKnown;
+    }
+
+    public boolean isBuildContentIndex() {
+        return buildContentIndex;
+    }
+
+    /**
+     * Reads patterns from {@link #IGNORE_FILE_NAME} in the directory.
+     *
+     * @param directory directory to look for the file in.
+     * @return patterns or empty list if there is no such file.
+     * @throws IOException if the file cannot be read.
+     */
+    static List<String> readIgnoreFile(Path directory) throws IOException {
+        File ignoreFile = directory.resolve(IGNORE_FILE_NAME).toFile();
+        List<String> patterns = new ArrayList<>();
+        if (!ignoreFile.isFile()) return patterns;
+        for (String line : Files.readAllLines(ignoreFile.toPath())) {
+            line = line.strip();
+            if (!line.isEmpty() && !line.startsWith("#"))
+                patterns.add(line);
+        }
+        return patterns;
+    }
+}
@@ -0,0 +1,38 @@
+package core;
+
+/**
+ * Outcome of {@link RepositoryScanner#scan(ScanOptions, String...)}.
+ */
+public final class ScanResult {
+
+    private final int repositoriesFound;
+    private final long directoriesVisited;
+    private final long directoriesPruned;
+
+    ScanResult(int repositoriesFound, long directoriesVisited, long directoriesPruned) {
+        this.repositoriesFound = repositoriesFound;
+        this.directoriesVisited = directoriesVisited;
+        this.directoriesPruned = directoriesPruned;
+    }
+
+    /**
+     * @return number of repositories found.
+     */
+    public int getRepositoriesFound() {
+        return repositoriesFound;
+    }
+
+    /**
+     * @return number of directories entered while scanning.
+     */
+    public long getDirectoriesVisited() {
+        return directoriesVisited;
+    }
+
+    /**
+     * @return number of directories skipped with their contents because of {@link ScanOptions}.
+     */
+    public long getDirectoriesPruned() {
+        return directoriesPruned;
+    }
+}
@@ -0,0 +1,112 @@
+package core;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CloneEngineTest {
+
+    @TempDir
+    Path root;
+
+    private final CloneEngine engine = new CloneEngine();
+
+    @Test
+    public void clonesRepository() throws Exception {
+        Path upstream = root.resolve("upstream");
+        Files.createDirectories(upstream);
+        git(upstream, "init", "--quiet");
+        git(upstream, "-c", "user.name=ddgit", "-c", "user.email=ddgit@localhost",
+                "commit", "--quiet", "--allow-empty", "-m", "Initial commit");
+
+        CloneResult result = clone(request(upstream.toString()));
+
+        assertEquals(CloneResult.Status.SUCCESS, result.getStatus());
+        assertNull(result.getErrorMessage());
+        assertTrue(Files.isDirectory(root.resolve("clone").resolve(".git")));
+    }
+
+    @Test
+    public void reportsGitFailure() throws Exception {
+        CloneResult result = clone(request(root.resolve("missing").toString()));
+
+        assertEquals(CloneResult.Status.GIT_FAILED, result.getStatus());
+        assertNotEquals(0, result.getExitCode());
+        assertFalse(Files.exists(root.resolve("clone")));
+    }
+
+    @Test
+    public void reportsInvalidRequest() throws Exception {
+        CloneResult result = clone(request("https://github.com/foo.git").cloner(Cloner.DEDUPLICATE_GITHUB));
+
+        assertEquals(CloneResult.Status.INVALID_REQUEST, result.getStatus());
+    }
+
+    @Test
+    public void timesOutAndRemovesPartialClone() throws Exception {
+        try (ServerSocket server = silentServer()) {
+            CloneResult result = clone(request(link(server)).timeout(Duration.ofSeconds(1)));
+
+            assertEquals(CloneResult.Status.TIMED_OUT, result.getStatus());
+            assertFalse(Files.exists(root.resolve("clone")));
+        }
+    }
+
+    @Test
+    public void cancellingKillsGit() throws Exception {
+        try (ServerSocket server = silentServer()) {
+            CompletableFuture<CloneResult> future = engine.submit(request(link(server)).build());
+            try (Socket connection = server.accept()) {
+                assertTrue(future.cancel(true));
+
+                // Git never gets an answer, so the connection is closed only when it is killed
+                InputStream input = connection.getInputStream();
+                connection.setSoTimeout(10_000);
+                while (input.read() != -1) {
+                }
+            }
+            assertTrue(future.isCancelled());
+        }
+    }
+
+    private CloneRequest.Builder request(String link) {
+        return CloneRequest.builder(link).directory("clone").workingDirectory(root);
+    }
+
+    private CloneResult clone(CloneRequest.Builder request) throws Exception {
+        return engine.submit(request.build()).get(30, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Accepts connections but never answers, so Git waits until it is killed.
+     */
+    private static ServerSocket silentServer() throws IOException {
+        ServerSocket server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        server.setSoTimeout(10_000);
+        return server;
+    }
+
+    private static String link(ServerSocket server) {
+        return "http://127.0.0.1:" + server.getLocalPort() + "/repository.git";
+    }
+
+    private static void git(Path directory, String... arguments) throws IOException, InterruptedException {
+        String[] command = new String[arguments.length + 1];
+        command[0] = "git";
+        System.arraycopy(arguments, 0, command, 1, arguments.length);
+        Process process = new ProcessBuilder(command).directory(directory.toFile()).inheritIO().start();
+        assertEquals(0, process.waitFor());
+    }
+}
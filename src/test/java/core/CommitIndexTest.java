@@ -0,0 +1,81 @@
+package core;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CommitIndexTest {
+
+    @TempDir
+    Path root;
+
+    @Test
+    public void indexesNewCommitsOfIndexedRepositories() throws IOException, InterruptedException {
+        Path repository = root.resolve("repo");
+        Files.createDirectories(repository);
+        git(repository, "init", "--quiet");
+        String first = commit(repository, "First");
+        File indexFile = root.resolve("index").toFile();
+        List<Path> repositories = List.of(repository.resolve(".git"));
+
+        CommitIndex index = RepositoryIndex.forRepositories(CommitIndex::new, indexFile, repositories);
+        assertEquals(repository.resolve(".git"), index.bestMatch(List.of(first)));
+
+        String second = commit(repository, "Second");
+        index = RepositoryIndex.forRepositories(CommitIndex::new, indexFile, repositories);
+        assertEquals(repository.resolve(".git"), index.bestMatch(List.of(second)));
+    }
+
+    @Test
+    public void dropsRepositoriesNotRequestedAnymore() throws IOException, InterruptedException {
+        Path kept = root.resolve("kept");
+        Path removed = root.resolve("removed");
+        Files.createDirectories(kept);
+        Files.createDirectories(removed);
+        git(kept, "init", "--quiet");
+        git(removed, "init", "--quiet");
+        commit(kept, "Kept");
+        commit(removed, "Removed");
+        File indexFile = root.resolve("index").toFile();
+        String removedPath = removed.resolve(".git").toAbsolutePath().toString();
+        RepositoryIndex.forRepositories(CommitIndex::new, indexFile, List.of(kept.resolve(".git"), removed.resolve(".git")));
+        assertTrue(Files.readString(indexFile.toPath(), StandardCharsets.ISO_8859_1).contains(removedPath));
+
+        RepositoryIndex.forRepositories(CommitIndex::new, indexFile, List.of(kept.resolve(".git")));
+        assertFalse(Files.readString(indexFile.toPath(), StandardCharsets.ISO_8859_1).contains(removedPath));
+    }
+
+    private static String commit(Path repository, String message) throws IOException, InterruptedException {
+        git(repository, "-c", "user.name=ddgit", "-c", "user.email=ddgit@localhost",
+                "commit", "--quiet", "--allow-empty", "-m", message);
+        return git(repository, "rev-parse", "HEAD").strip();
+    }
+
+    private static String git(Path directory, String... arguments) throws IOException, InterruptedException {
+        String[] command = new String[arguments.length + 1];
+        command[0] = "git";
+        System.arraycopy(arguments, 0, command, 1, arguments.length);
+        Process process = new ProcessBuilder(command).directory(directory.toFile()).redirectErrorStream(true).start();
+        StringBuilder output = new StringBuilder();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                output.append(line).append('\n');
+            }
+        }
+        assertEquals(0, process.waitFor());
+        return output.toString();
+    }
+}
@@ -0,0 +1,103 @@
+package core;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ObjectIndexTest {
+
+    @TempDir
+    Path root;
+
+    @Test
+    public void readsPackIndexVersion2() throws IOException, InterruptedException {
+        Path repository = createRepository();
+        git(repository, "repack", "--quiet", "-a", "-d");
+
+        assertArrayEquals(showIndex(repository), collect(repository));
+    }
+
+    @Test
+    public void readsPackIndexVersion1() throws IOException, InterruptedException {
+        Path repository = createRepository();
+        git(repository, "-c", "pack.indexVersion=1", "repack", "--quiet", "-a", "-d");
+
+        assertArrayEquals(showIndex(repository), collect(repository));
+    }
+
+    @Test
+    public void skipsRepositoryWithUnreadablePackIndex() throws IOException, InterruptedException {
+        Path repository = createRepository();
+        git(repository, "repack", "--quiet", "-a", "-d");
+        Files.writeString(packDirectory(repository).resolve("pack-broken.idx"), "not a pack index");
+
+        assertNull(new ObjectIndex().collect(repository.resolve(".git")));
+    }
+
+    private Path createRepository() throws IOException, InterruptedException {
+        Path repository = root.resolve("repo");
+        Files.createDirectories(repository);
+        git(repository, "init", "--quiet");
+        for (int i = 0; i < 3; i++) {
+            Files.writeString(repository.resolve("file" + i), "content " + i);
+            git(repository, "add", ".");
+            git(repository, "-c", "user.name=ddgit", "-c", "user.email=ddgit@localhost", "commit", "--quiet", "-m", "Commit " + i);
+        }
+        return repository;
+    }
+
+    private static Path packDirectory(Path repository) {
+        return repository.resolve(".git").resolve("objects").resolve("pack");
+    }
+
+    private static long[] collect(Path repository) {
+        long[] keys = new ObjectIndex().collect(repository.resolve(".git"));
+        assertNotNull(keys);
+        Arrays.sort(keys);
+        return keys;
+    }
+
+    /**
+     * Reads the objects of every pack of the repository with "git show-index".
+     */
+    private static long[] showIndex(Path repository) throws IOException, InterruptedException {
+        long[] keys = new long[0];
+        try (DirectoryStream<Path> packIndexes = Files.newDirectoryStream(packDirectory(repository), "*.idx")) {
+            for (Path packIndex : packIndexes) {
+                Process process = new ProcessBuilder("git", "show-index")
+                        .directory(repository.toFile())
+                        .redirectInput(packIndex.toFile())
+                        .start();
+                try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        // Every line is "<offset> <hash> (<crc>)"
+                        keys = Arrays.copyOf(keys, keys.length + 1);
+                        keys[keys.length - 1] = RepositoryIndex.key(line.split(" ")[1]);
+                    }
+                }
+                assertEquals(0, process.waitFor());
+            }
+        }
+        assertNotEquals(0, keys.length);
+        Arrays.sort(keys);
+        return keys;
+    }
+
+    private static void git(Path directory, String... arguments) throws IOException, InterruptedException {
+        String[] command = new String[arguments.length + 1];
+        command[0] = "git";
+        System.arraycopy(arguments, 0, command, 1, arguments.length);
+        Process process = new ProcessBuilder(command).directory(directory.toFile()).inheritIO().start();
+        assertEquals(0, process.waitFor());
+    }
+}
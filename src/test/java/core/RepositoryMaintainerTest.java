@@ -0,0 +1,44 @@
+package core;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class RepositoryMaintainerTest {
+
+    @TempDir
+    Path root;
+
+    @Test
+    public void maintainsRepositoryWithLooseObjectsOnly() throws IOException, InterruptedException {
+        Path upstream = root.resolve("upstream");
+        Files.createDirectories(upstream);
+        git(upstream, "init", "--quiet");
+        Files.writeString(upstream.resolve("file"), "content");
+        git(upstream, "add", "file");
+        git(upstream, "-c", "user.name=ddgit", "-c", "user.email=ddgit@localhost", "commit", "--quiet", "-m", "Initial commit");
+        // Local clones copy loose objects as they are
+        git(root, "clone", "--quiet", upstream.toString(), "source");
+        Path repository = root.resolve("source").resolve(".git");
+
+        new RepositoryMaintainer("1m", Duration.ZERO).maintain(repository);
+
+        assertTrue(Files.exists(repository.resolve("objects").resolve("pack").resolve("multi-pack-index")));
+        git(root.resolve("source"), "fsck", "--no-dangling");
+    }
+
+    private static void git(Path directory, String... arguments) throws IOException, InterruptedException {
+        String[] command = new String[arguments.length + 1];
+        command[0] = "git";
+        System.arraycopy(arguments, 0, command, 1, arguments.length);
+        Process process = new ProcessBuilder(command).directory(directory.toFile()).inheritIO().start();
+        assertEquals(0, process.waitFor());
+    }
+}
@@ -0,0 +1,90 @@
+package core;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class RepositoryVisitorTest {
+
+    @TempDir
+    Path root;
+
+    @Test
+    public void findsRepositoryWithDefaultOptions() throws IOException, InterruptedException {
+        Path repository = createRepository(root.resolve("projects").resolve("repo"));
+
+        Map<String, Path> repositories = walk(new ScanOptions());
+
+        assertEquals(1, repositories.size());
+        assertEquals(repository.resolve(".git"), repositories.values().iterator().next());
+    }
+
+    @Test
+    public void respectsMaxDepth() throws IOException, InterruptedException {
+        createRepository(root.resolve("projects").resolve("repo"));
+
+        assertEquals(1, walk(new ScanOptions().maxDepth(2)).size());
+        assertTrue(walk(new ScanOptions().maxDepth(1)).isEmpty());
+    }
+
+    @Test
+    public void skipsIgnoredDirectories() throws IOException, InterruptedException {
+        createRepository(root.resolve("node_modules").resolve("repo"));
+        createRepository(root.resolve("old").resolve("repo"));
+
+        assertTrue(walk(new ScanOptions().ignore(List.of("old"))).isEmpty());
+        assertEquals(2, walk(new ScanOptions().skipWellKnown(false)).size());
+    }
+
+    @Test
+    public void visitsGenericWorkspaceDirectoriesByDefault() throws IOException, InterruptedException {
+        createRepository(root.resolve("build").resolve("repo"));
+
+        assertEquals(1, walk(new ScanOptions()).size());
+    }
+
+    @Test
+    public void reportsOnlyRootsOfWorkingTrees() throws IOException, InterruptedException {
+        Path repository = createRepository(root.resolve("repo"));
+        Files.createDirectories(repository.resolve("src").resolve("main"));
+        List<Path> entered = new ArrayList<>();
+
+        RepositoryVisitor visitor = new RepositoryVisitor(root, new ScanOptions());
+        visitor.setDirectoryListener(entered::add);
+        Files.walkFileTree(root, visitor);
+
+        assertEquals(List.of(root, repository), entered);
+        assertEquals(1, visitor.getRepositories().size());
+    }
+
+    private Map<String, Path> walk(ScanOptions options) throws IOException {
+        RepositoryVisitor visitor = new RepositoryVisitor(root, options);
+        Files.walkFileTree(root, visitor);
+        return visitor.getRepositories();
+    }
+
+    private static Path createRepository(Path directory) throws IOException, InterruptedException {
+        Files.createDirectories(directory);
+        git(directory, "init", "--quiet");
+        git(directory, "-c", "user.name=ddgit", "-c", "user.email=ddgit@localhost",
+                "commit", "--quiet", "--allow-empty", "-m", "Initial commit of " + directory);
+        return directory;
+    }
+
+    private static void git(Path directory, String... arguments) throws IOException, InterruptedException {
+        String[] command = new String[arguments.length + 1];
+        command[0] = "git";
+        System.arraycopy(arguments, 0, command, 1, arguments.length);
+        Process process = new ProcessBuilder(command).directory(directory.toFile()).inheritIO().start();
+        assertEquals(0, process.waitFor());
+    }
+}